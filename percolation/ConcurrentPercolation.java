@@ -0,0 +1,371 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Percolation, for many threads opening sites of the same grid at once.
+ * The union-find follows the packed layout of GridUnionFind in an atomic array:
+ * finds are lock-free and halve paths with compare-and-set on non-root entries only,
+ * while every write to a root entry, linking it or adding flags, holds the lock of its stripe.
+ * Unions lock the stripes of both roots in stripe order and retry if either root was linked meanwhile,
+ * so opens in disjoint regions of the grid rarely contend.
+ * percolates() turns true inside the union or marking that first gives a tree both flags,
+ * before the flags are published, and never turns false again: once isFull() is true
+ * for a site of the bottom row, percolates() is true as well
+ */
+public class ConcurrentPercolation {
+
+    // The flags of a tree touching both the top and the bottom row
+    private static final int SPANNING = GridUnionFind.TOP | GridUnionFind.BOTTOM;
+
+    // The number of low bits of a root entry holding the flags
+    private static final int FLAG_BITS = 2;
+
+    // The entry of a singleton root, with rank 0 and no flags
+    private static final int SINGLETON = ~0;
+
+    // The length of the side (size) of the grid
+    private final int n;
+
+    // The parent link of each site, or the complement of rank and flags for a root
+    private final AtomicIntegerArray id;
+
+    // The open status of the sites packed 64 to a word
+    private final AtomicLongArray openStatus;
+
+    // The locks guarding the root entries, a root being guarded by stripes[root & stripeMask]
+    private final Object[] stripes;
+
+    // The mask selecting the stripe of a root
+    private final int stripeMask;
+
+    // The number of open sites
+    private final AtomicInteger openCount = new AtomicInteger();
+
+    // Whether a tree has touched both the top and the bottom row
+    private volatile boolean percolated = false;
+
+    /**
+     * Creates an n-by-n grid, with all sites initially blocked
+     * @param n the length of the side of the grid
+     * @throws IllegalArgumentException if n is not positive
+     */
+    public ConcurrentPercolation(int n) {
+        // validates argument n
+        if (n <= 0) {
+            String msg = String.format("n should be > 0, but %d found", n);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // initialises the instance variables
+        this.n = n;
+        this.id = new AtomicIntegerArray(n*n);
+        for (int i = 0; i < n*n; i++) {
+            this.id.set(i, SINGLETON);
+        }
+
+        // flags the bottom row from the start, so that no union can fill a bottom site
+        // before its tree is flagged, while its opener has yet to mark it
+        for (int i = (n-1)*n; i < n*n; i++) {
+            this.id.set(i, ~GridUnionFind.BOTTOM);
+        }
+        this.openStatus = new AtomicLongArray((n*n + 63) >>> 6);
+
+        // a few stripes per core, as a power of two
+        int stripes = Integer.highestOneBit(16 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+        this.stripes = new Object[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Object();
+        }
+        this.stripeMask = stripes - 1;
+    }
+
+    /**
+     * Opens the site (row, col) if it is not open already.
+     * Safe to call from many threads at once
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     */
+    public void open(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        int site = (row-1)*this.n + (col-1);
+
+        // claims the site, skipping if it is already open
+        int word = site >>> 6;
+        long mask = 1L << site;
+        long bits;
+        do {
+            bits = this.openStatus.get(word);
+            if ((bits & mask) != 0) return;
+        } while (!this.openStatus.compareAndSet(word, bits, bits | mask));
+        this.openCount.incrementAndGet();
+
+        // flags the tree of the site if the site is in the first row, the last row being flagged already
+        if (row == 1) this.mark(site, GridUnionFind.TOP);
+
+        /* connects to neighbouring open sites,
+           of two neighbours opened at once, at least one sees the other as open */
+
+        // if there is an open site to the right (row, col+1)
+        if (col < this.n && this.isOpenSite(site+1)) this.union(site, site+1);
+
+        // if there is an open site to the left (row, col-1)
+        if (col > 1 && this.isOpenSite(site-1)) this.union(site, site-1);
+
+        // if there is an open site above (row-1, col)
+        if (row > 1 && this.isOpenSite(site-this.n)) this.union(site, site-this.n);
+
+        // if there is an open site below (row+1, col)
+        if (row < this.n && this.isOpenSite(site+this.n)) this.union(site, site+this.n);
+    }
+
+    /**
+     * Is the site (row, col) open?
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     * @return true if open, vice versa
+     */
+    public boolean isOpen(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        return this.isOpenSite((row-1)*this.n + (col-1));
+    }
+
+    /**
+     * Is the site (row, col) full?
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     * @return true if full, vice versa
+     */
+    public boolean isFull(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        // a blocked site is a singleton without the TOP flag, so it is never full
+        int site = (row-1)*this.n + (col-1);
+        return (this.flags(site) & GridUnionFind.TOP) != 0;
+    }
+
+    /**
+     * Returns the number of open sites
+     * @return the number of open sites
+     */
+    public int numberOfOpenSites() {
+        return this.openCount.get();
+    }
+
+    /**
+     * Does the system percolate?
+     * @return true if the system percolates, vice versa
+     */
+    public boolean percolates() {
+        return this.percolated;
+    }
+
+    /**
+     * Is a site open? The index is not validated
+     * @param site an 1D index in range [0, n^2)
+     * @return true if open, vice versa
+     */
+    private boolean isOpenSite(int site) {
+        return (this.openStatus.get(site >>> 6) & (1L << site)) != 0;
+    }
+
+    /**
+     * Returns the root of a site without locking, pointing sites on the path at their grandparents.
+     * A non-root entry never becomes a root again, so halving only ever swaps one ancestor for another
+     * @param p an 1D index in range [0, n^2)
+     * @return the root of the site at some point during the call
+     */
+    private int find(int p) {
+        while (true) {
+            int parent = this.id.get(p);
+            if (parent < 0) return p;
+
+            int grandparent = this.id.get(parent);
+            if (grandparent < 0) return parent;
+
+            this.id.compareAndSet(p, parent, grandparent);
+            p = grandparent;
+        }
+    }
+
+    /**
+     * Returns the flags of the tree of a site
+     * @param p an 1D index in range [0, n^2)
+     * @return a combination of TOP and BOTTOM
+     */
+    private int flags(int p) {
+        while (true) {
+            int root = this.find(p);
+            int entry = this.id.get(root);
+            if (entry < 0) return ~entry & SPANNING;
+        }
+    }
+
+    /**
+     * Adds flags to the tree of a site, setting percolated before publishing both flags
+     * @param p an 1D index in range [0, n^2)
+     * @param flags a combination of TOP and BOTTOM
+     */
+    private void mark(int p, int flags) {
+        while (true) {
+            int root = this.find(p);
+            synchronized (this.stripes[root & this.stripeMask]) {
+                int entry = this.id.get(root);
+                if (entry >= 0) continue; // linked meanwhile, retries from the new root
+
+                int marked = ~entry | flags;
+                if ((marked & SPANNING) == SPANNING) this.percolated = true;
+                this.id.set(root, ~marked);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Merges the trees of two sites, linking the lower ranked root to the other,
+     * setting percolated before publishing a merged tree with both flags
+     * @param p an 1D index in range [0, n^2)
+     * @param q another 1D index in range [0, n^2)
+     */
+    private void union(int p, int q) {
+        while (true) {
+            int rootP = this.find(p);
+            int rootQ = this.find(q);
+            if (rootP == rootQ) {
+                if (this.id.get(rootP) < 0) return;
+                continue;
+            }
+
+            // locks the two stripes in index order, so that no two unions wait on each other
+            int stripeP = rootP & this.stripeMask;
+            int stripeQ = rootQ & this.stripeMask;
+            Object first = this.stripes[Math.min(stripeP, stripeQ)];
+            Object second = this.stripes[Math.max(stripeP, stripeQ)];
+            synchronized (first) {
+                synchronized (second) {
+                    int entryP = this.id.get(rootP);
+                    int entryQ = this.id.get(rootQ);
+                    if (entryP >= 0 || entryQ >= 0) continue; // linked meanwhile, retries from the new roots
+
+                    int rankP = ~entryP >>> FLAG_BITS;
+                    int rankQ = ~entryQ >>> FLAG_BITS;
+                    int flags = (~entryP | ~entryQ) & SPANNING;
+                    if (flags == SPANNING) this.percolated = true;
+
+                    if (rankP < rankQ) {
+                        this.id.set(rootQ, ~((rankQ << FLAG_BITS) | flags));
+                        this.id.set(rootP, rootQ);
+                    } else {
+                        if (rankP == rankQ) rankP++;
+                        this.id.set(rootP, ~((rankP << FLAG_BITS) | flags));
+                        this.id.set(rootQ, rootP);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Validates if an index lies in range [1, n],
+     * throw an <code>IllegalArgumentException</code> if not
+     * @param index a row/col index
+     * @throws IllegalArgumentException if an index is outside [1, n]
+     */
+    private void validateIndex(int index) {
+        if (index < 1 || index > this.n) {
+            String msg = String.format("Index should be between 1 and %d, but %d is found", this.n, index);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // stress test, checking percolates() against isFull() on the bottom row while sites are opened,
+    // then comparing the final grid against the sequential Percolation
+    public static void main(String[] args) throws InterruptedException {
+        int n = args.length < 1 ? 256 : Integer.parseInt(args[0]);
+        int threads = args.length < 2 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[1]);
+        int rounds = args.length < 3 ? 20 : Integer.parseInt(args[2]);
+        SplittableRandom random = new SplittableRandom(args.length < 4 ? 0L : Long.parseLong(args[3]));
+
+        for (int round = 0; round < rounds; round++) {
+            ConcurrentPercolation concurrent = new ConcurrentPercolation(n);
+
+            // even rounds open disjoint bands of rows, odd rounds let every thread open anywhere
+            boolean disjoint = round % 2 == 0;
+            double fraction = 0.45 + 0.3 * random.nextDouble();
+            int[][] opened = new int[threads][];
+            Thread[] workers = new Thread[threads];
+            for (int t = 0; t < threads; t++) {
+                int worker = t;
+                SplittableRandom stream = random.split();
+                workers[t] = new Thread(() -> {
+                    int lo = disjoint ? worker * n / threads : 0;
+                    int hi = disjoint ? (worker + 1) * n / threads : n;
+                    int count = (int) (fraction * (hi - lo) * n / (disjoint ? 1 : threads));
+                    int[] sites = new int[count];
+                    for (int i = 0; i < count; i++) {
+                        int row = stream.nextInt(lo, hi) + 1;
+                        int col = stream.nextInt(n) + 1;
+                        concurrent.open(row, col);
+                        sites[i] = (row-1)*n + (col-1);
+                    }
+                    opened[worker] = sites;
+                });
+            }
+
+            // watches the bottom row while the workers run, as a full bottom site means the system percolates
+            AtomicBoolean running = new AtomicBoolean(true);
+            AtomicInteger lagging = new AtomicInteger(-1);
+            Thread watcher = new Thread(() -> {
+                while (running.get() && lagging.get() < 0) {
+                    for (int col = 1; col <= n; col++) {
+                        if (concurrent.isFull(n, col) && !concurrent.percolates()) lagging.compareAndSet(-1, col);
+                    }
+                }
+            });
+
+            watcher.start();
+            for (Thread worker : workers) worker.start();
+            for (Thread worker : workers) worker.join();
+            running.set(false);
+            watcher.join();
+
+            if (lagging.get() >= 0) {
+                String msg = String.format("Round %d: site (%d, %d) full before percolates()", round, n, lagging.get());
+                throw new AssertionError(msg);
+            }
+
+            // replays the same sites sequentially, the order does not change the final grid
+            Percolation sequential = new Percolation(n);
+            for (int[] sites : opened) {
+                sequential.openAll(sites);
+            }
+
+            if (sequential.percolates() != concurrent.percolates()
+                    || sequential.numberOfOpenSites() != concurrent.numberOfOpenSites()) {
+                throw new AssertionError("Round " + round + ": percolation or open count differs");
+            }
+            for (int row = 1; row <= n; row++) {
+                for (int col = 1; col <= n; col++) {
+                    if (sequential.isOpen(row, col) != concurrent.isOpen(row, col)
+                            || sequential.isFull(row, col) != concurrent.isFull(row, col)) {
+                        String msg = String.format("Round %d: site (%d, %d) differs", round, row, col);
+                        throw new AssertionError(msg);
+                    }
+                }
+            }
+        }
+
+        StdOut.printf("%d rounds on a %d-by-%d grid with %d threads match the sequential Percolation\n",
+                      rounds, n, n, threads);
+    }
+}
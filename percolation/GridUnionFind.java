@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/**
+ * A union-find over the sites of a grid, packed into a single int array.
+ * A non-negative entry is the parent link of a site; a negative entry marks a root
+ * and holds the bitwise complement of its rank and flags, with the flags in the lowest two bits.
+ * Flags record whether a tree touches the top or the bottom row, so that fullness and
+ * percolation can be read off the root without any virtual sites or a second union-find.
+ * Finds use path halving and unions link by rank.
+ * Indices are not validated; callers validate them once at their own API
+ */
+public class GridUnionFind {
+
+    // The flag of a tree containing a site in the top row
+    public static final int TOP = 1;
+
+    // The flag of a tree containing a site in the bottom row
+    public static final int BOTTOM = 2;
+
+    // The number of low bits of a root entry holding the flags
+    private static final int FLAG_BITS = 2;
+
+    // The mask of the flags in a root entry
+    private static final int FLAG_MASK = TOP | BOTTOM;
+
+    // The entry of a singleton root, with rank 0 and no flags
+    private static final int SINGLETON = ~0;
+
+    // The parent link of each site, or the complement of rank and flags for a root
+    private final int[] id;
+
+    /* counters of PercolationMetrics, only updated when PercolationMetrics.ENABLED */
+
+    private long finds = 0; // the number of finds
+    private long unions = 0; // the number of unions
+    private long pathSteps = 0; // the number of parent links followed by all the finds
+    private int longestPath = 0; // the most parent links followed by a single find
+    private int highestRank = 0; // the highest rank of a root
+
+    /**
+     * Creates a union-find of n singleton sites with no flags
+     * @param n the number of sites
+     * @throws IllegalArgumentException if n is negative
+     */
+    public GridUnionFind(int n) {
+        if (n < 0) {
+            String msg = String.format("n should be >= 0, but %d found", n);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.id = new int[n];
+        Arrays.fill(this.id, SINGLETON);
+    }
+
+    /**
+     * Returns the root of a site, pointing every other site on the path at its grandparent
+     * @param p the index of a site
+     * @return the root of the site
+     */
+    public int find(int p) {
+        int[] id = this.id;
+        int steps = 0;
+        while (id[p] >= 0) {
+            int parent = id[p];
+            if (id[parent] >= 0) {
+                id[p] = id[parent];
+                steps++;
+            }
+            steps++;
+            p = id[p];
+        }
+
+        if (PercolationMetrics.ENABLED) {
+            this.finds++;
+            this.pathSteps += steps;
+            if (steps > this.longestPath) this.longestPath = steps;
+        }
+        return p;
+    }
+
+    /**
+     * Are the two sites in the same tree?
+     * @param p the index of a site
+     * @param q the index of another site
+     * @return true if connected, vice versa
+     */
+    public boolean connected(int p, int q) {
+        return this.find(p) == this.find(q);
+    }
+
+    /**
+     * Merges the trees of two sites, linking the lower ranked root to the other
+     * @param p the index of a site
+     * @param q the index of another site
+     * @return the flags of the merged tree
+     */
+    public int union(int p, int q) {
+        int rootP = this.find(p);
+        int rootQ = this.find(q);
+        if (PercolationMetrics.ENABLED) this.unions++;
+
+        int entryP = ~this.id[rootP];
+        int entryQ = ~this.id[rootQ];
+        if (rootP == rootQ) return entryP & FLAG_MASK;
+
+        int rankP = entryP >>> FLAG_BITS;
+        int rankQ = entryQ >>> FLAG_BITS;
+        int flags = (entryP | entryQ) & FLAG_MASK;
+
+        if (rankP < rankQ) {
+            this.id[rootP] = rootQ;
+            this.id[rootQ] = ~((rankQ << FLAG_BITS) | flags);
+        } else if (rankP > rankQ) {
+            this.id[rootQ] = rootP;
+            this.id[rootP] = ~((rankP << FLAG_BITS) | flags);
+        } else {
+            this.id[rootQ] = rootP;
+            this.id[rootP] = ~(((rankP + 1) << FLAG_BITS) | flags);
+            if (PercolationMetrics.ENABLED && rankP + 1 > this.highestRank) this.highestRank = rankP + 1;
+        }
+
+        return flags;
+    }
+
+    /**
+     * Adds flags to the tree of a site
+     * @param p the index of a site
+     * @param flags a combination of TOP and BOTTOM
+     * @return the flags of the tree after marking
+     */
+    public int mark(int p, int flags) {
+        int root = this.find(p);
+        int entry = ~this.id[root] | (flags & FLAG_MASK);
+        this.id[root] = ~entry;
+        return entry & FLAG_MASK;
+    }
+
+    /**
+     * Returns the flags of the tree of a site
+     * @param p the index of a site
+     * @return a combination of TOP and BOTTOM
+     */
+    public int flags(int p) {
+        return ~this.id[this.find(p)] & FLAG_MASK;
+    }
+
+    /**
+     * Returns a snapshot of the counters, all zeroes unless PercolationMetrics.ENABLED
+     * @param opens the number of timed opens
+     * @param latencies the number of opens in each latency bucket
+     * @return a snapshot of the counters
+     */
+    PercolationMetrics metrics(long opens, long[] latencies) {
+        return new PercolationMetrics(opens, this.finds, this.unions, this.pathSteps, this.longestPath,
+                                      this.highestRank, latencies);
+    }
+
+    /**
+     * Turns a site back into a singleton with no flags.
+     * Only safe when every site of its tree is reset as well
+     * @param p the index of a site
+     */
+    public void reset(int p) {
+        this.id[p] = SINGLETON;
+    }
+}
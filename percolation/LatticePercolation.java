@@ -0,0 +1,404 @@
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+
+/**
+ * Site or bond percolation on a d-dimensional hypercubic lattice, such as a 2D square or a 3D cubic grid,
+ * with each axis either bounded or periodic (wrapping around). The system percolates when a cluster
+ * spans axis 0, from the layer at co-ordinate 0 (top) to the layer at co-ordinate dims[0]-1 (bottom),
+ * so axis 0 itself cannot be periodic.
+ * The topology is plain data, an extent, a stride, a wrap offset and a periodic flag per axis, walked by a single
+ * loop over the axes, so the hot path runs on GridUnionFind with no virtual call per neighbour,
+ * and with one division per axis but the last, which on a 2D lattice is the single division of Percolation.
+ * Sites are given by their row-major index, with axis 0 varying the slowest
+ */
+public class LatticePercolation {
+
+    /**
+     * What opens on the lattice
+     */
+    public enum Kind {
+        // sites open and connect to their open neighbours
+        SITE,
+        // every site is open and bonds between neighbouring sites open
+        BOND
+    }
+
+    // The flags of a tree touching both the top and the bottom layer
+    private static final int SPANNING = GridUnionFind.TOP | GridUnionFind.BOTTOM;
+
+    // Whether sites or bonds open
+    private final Kind kind;
+
+    // The extent of each axis
+    private final int[] dims;
+
+    // The distance between the indices of neighbouring sites along each axis
+    private final int[] strides;
+
+    // Whether each axis wraps around
+    private final boolean[] periodic;
+
+    // The distance from the first to the last site of a line along each axis
+    private final int[] wraps;
+
+    // The number of sites in the lattice
+    private final int sites;
+
+    // The union-find over the sites, flagging the trees that touch the top or the bottom layer
+    private final GridUnionFind grid;
+
+    // The open status of the sites, or of the bonds, packed 64 to a word.
+    // Bond (site, axis) joins site to its next neighbour along axis and has bit site*dims.length + axis
+    private final long[] openStatus;
+
+    // The number of open sites or bonds
+    private int openCount = 0;
+
+    // Whether a tree has touched both the top and the bottom layer
+    private boolean percolated = false;
+
+    /**
+     * Creates a lattice with all sites, or all bonds, initially blocked
+     * @param kind whether sites or bonds open
+     * @param dims the extent of each axis
+     * @param periodic whether each axis wraps around
+     * @throws IllegalArgumentException if an argument is null, the arrays differ in length or are empty,
+     *                                  an extent is not positive, the lattice is too large,
+     *                                  or axis 0 is periodic
+     */
+    public LatticePercolation(Kind kind, int[] dims, boolean[] periodic) {
+        // validates arguments
+        if (kind == null || dims == null || periodic == null) {
+            throw new IllegalArgumentException("Kind, dims and periodic should not be null");
+        }
+        if (dims.length == 0 || dims.length != periodic.length) {
+            throw new IllegalArgumentException("Dims and periodic should be non-empty and of the same length");
+        }
+        if (periodic[0]) throw new IllegalArgumentException("Axis 0 is the spanning axis and cannot be periodic");
+
+        long count = 1;
+        for (int extent : dims) {
+            if (extent <= 0) {
+                String msg = String.format("Extents should be > 0, but %d found", extent);
+                throw new IllegalArgumentException(msg);
+            }
+            count *= extent;
+            if (count * dims.length > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("The lattice has too many sites or bonds");
+            }
+        }
+
+        // initialises the instance variables
+        this.kind = kind;
+        this.dims = dims.clone();
+        this.periodic = periodic.clone();
+        this.sites = (int) count;
+        this.strides = new int[dims.length];
+        this.wraps = new int[dims.length];
+        int stride = 1;
+        for (int d = dims.length - 1; d >= 0; d--) {
+            this.strides[d] = stride;
+            this.wraps[d] = (dims[d] - 1) * stride;
+            stride *= dims[d];
+        }
+        this.grid = new GridUnionFind(this.sites);
+        long bits = kind == Kind.SITE ? this.sites : (long) this.sites * dims.length;
+        this.openStatus = new long[(int) ((bits + 63) >>> 6)];
+
+        // with bonds, every site is open, so the top and the bottom layers are flagged up front
+        if (kind == Kind.BOND) {
+            int layer = this.strides[0];
+            for (int site = 0; site < layer; site++) {
+                this.grid.mark(site, GridUnionFind.TOP);
+                this.grid.mark(this.sites - layer + site, GridUnionFind.BOTTOM);
+            }
+            if (this.grid.flags(0) == SPANNING) this.percolated = true;
+        }
+    }
+
+    /**
+     * Returns the row-major index of the site at given co-ordinates
+     * @param coords the co-ordinate along each axis, each in [0, extent)
+     * @return the index of the site
+     * @throws IllegalArgumentException if coords has the wrong length or a co-ordinate is out of range
+     */
+    public int index(int... coords) {
+        if (coords == null || coords.length != this.dims.length) {
+            String msg = String.format("Expecting %d co-ordinates", this.dims.length);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int site = 0;
+        for (int d = 0; d < coords.length; d++) {
+            if (coords[d] < 0 || coords[d] >= this.dims[d]) {
+                String msg = String.format("Co-ordinate %d should be between 0 and %d, but %d is found",
+                                           d, this.dims[d] - 1, coords[d]);
+                throw new IllegalArgumentException(msg);
+            }
+            site += coords[d] * this.strides[d];
+        }
+        return site;
+    }
+
+    /**
+     * Returns the number of sites in the lattice
+     * @return the number of sites in the lattice
+     */
+    public int sites() {
+        return this.sites;
+    }
+
+    /**
+     * Returns the number of bonds a bond lattice can open,
+     * a bounded axis of extent k having k-1 bonds per line and a periodic one k (none if k is 1)
+     * @return the number of bonds in the lattice
+     */
+    public int bonds() {
+        long bonds = 0;
+        for (int d = 0; d < this.dims.length; d++) {
+            int perLine = this.dims[d] == 1 ? 0 : this.periodic[d] ? this.dims[d] : this.dims[d] - 1;
+            bonds += (long) (this.sites / this.dims[d]) * perLine;
+        }
+        return (int) bonds;
+    }
+
+    /**
+     * Opens a site of a site lattice if it is not open already
+     * @param site the index of the site
+     * @throws IllegalArgumentException if the site is out of range
+     * @throws UnsupportedOperationException if the lattice opens bonds
+     */
+    public void openSite(int site) {
+        if (this.kind != Kind.SITE) throw new UnsupportedOperationException("Sites do not open on a bond lattice");
+        validateSite(site);
+
+        // skips if the site is already open
+        if (this.isOpenBit(site)) return;
+
+        // opens the site and increments counter
+        this.openStatus[site >>> 6] |= 1L << site;
+        this.openCount++;
+
+        // flags the tree of the site if the site is in the top or the bottom layer
+        int layer = this.strides[0];
+        int flags = 0;
+        if (site < layer) flags |= GridUnionFind.TOP;
+        if (site >= this.sites - layer) flags |= GridUnionFind.BOTTOM;
+        if (flags != 0) flags = this.grid.mark(site, flags);
+
+        // connects to the open neighbours on both sides of every axis,
+        // peeling the co-ordinate along each axis off the rest of the index, the last one without a division
+        int last = this.dims.length - 1;
+        int rest = site;
+        for (int d = 0; d <= last; d++) {
+            int coord = d == last ? rest : rest / this.strides[d];
+            rest -= coord * this.strides[d];
+
+            int next = this.next(site, d, coord);
+            if (next >= 0 && this.isOpenBit(next)) flags = this.grid.union(site, next);
+
+            int prev = this.prev(site, d, coord);
+            if (prev >= 0 && this.isOpenBit(prev)) flags = this.grid.union(site, prev);
+        }
+
+        // the system percolates once a tree touches both the top and the bottom layer
+        if (flags == SPANNING) this.percolated = true;
+    }
+
+    /**
+     * Opens the bond of a bond lattice between a site and its next neighbour along an axis,
+     * if it is not open already
+     * @param site the index of the site
+     * @param axis the axis of the bond
+     * @throws IllegalArgumentException if the site or the axis is out of range,
+     *                                  or the site is the last along a bounded axis
+     * @throws UnsupportedOperationException if the lattice opens sites
+     */
+    public void openBond(int site, int axis) {
+        if (this.kind != Kind.BOND) throw new UnsupportedOperationException("Bonds do not open on a site lattice");
+        validateSite(site);
+        if (axis < 0 || axis >= this.dims.length) {
+            String msg = String.format("Axis should be between 0 and %d, but %d is found", this.dims.length - 1, axis);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int next = this.next(site, axis, this.coordinate(site, axis));
+        if (next < 0) throw new IllegalArgumentException("There is no bond past the last site of a bounded axis");
+
+        // skips if the bond is already open
+        int bond = site * this.dims.length + axis;
+        if (this.isOpenBit(bond)) return;
+
+        // opens the bond and increments counter
+        this.openStatus[bond >>> 6] |= 1L << bond;
+        this.openCount++;
+
+        // the system percolates once a tree touches both the top and the bottom layer
+        if (this.grid.union(site, next) == SPANNING) this.percolated = true;
+    }
+
+    /**
+     * Is a site open? Every site of a bond lattice is open
+     * @param site the index of the site
+     * @return true if open, vice versa
+     * @throws IllegalArgumentException if the site is out of range
+     */
+    public boolean isOpen(int site) {
+        validateSite(site);
+
+        return this.kind == Kind.BOND || this.isOpenBit(site);
+    }
+
+    /**
+     * Is a site full, that is connected to the top layer?
+     * @param site the index of the site
+     * @return true if full, vice versa
+     * @throws IllegalArgumentException if the site is out of range
+     */
+    public boolean isFull(int site) {
+        validateSite(site);
+
+        // a blocked site is a singleton without flags, so it is never full
+        return (this.grid.flags(site) & GridUnionFind.TOP) != 0;
+    }
+
+    /**
+     * Returns the number of open sites of a site lattice, or of open bonds of a bond lattice
+     * @return the number of open sites or bonds
+     */
+    public int numberOfOpen() {
+        return this.openCount;
+    }
+
+    /**
+     * Does the system percolate?
+     * @return true if the system percolates, vice versa
+     */
+    public boolean percolates() {
+        return this.percolated;
+    }
+
+    /**
+     * Returns the co-ordinate of a site along an axis, by at most two divisions
+     * @param site the index of the site
+     * @param d the axis
+     * @return the co-ordinate along the axis, in [0, extent)
+     */
+    private int coordinate(int site, int d) {
+        // the offset of the site in its line along the axis, the whole index along axis 0
+        int offset = d == 0 ? site : site - (site / this.strides[d-1]) * this.strides[d-1];
+        return d == this.dims.length - 1 ? offset : offset / this.strides[d];
+    }
+
+    /**
+     * Returns the next neighbour of a site along an axis
+     * @param site the index of the site
+     * @param d the axis
+     * @param coord the co-ordinate of the site along the axis
+     * @return the index of the neighbour, or -1 past the end of a bounded axis
+     */
+    private int next(int site, int d, int coord) {
+        if (coord < this.dims[d] - 1) return site + this.strides[d];
+        return this.periodic[d] ? site - this.wraps[d] : -1;
+    }
+
+    /**
+     * Returns the previous neighbour of a site along an axis
+     * @param site the index of the site
+     * @param d the axis
+     * @param coord the co-ordinate of the site along the axis
+     * @return the index of the neighbour, or -1 before the start of a bounded axis
+     */
+    private int prev(int site, int d, int coord) {
+        if (coord > 0) return site - this.strides[d];
+        return this.periodic[d] ? site + this.wraps[d] : -1;
+    }
+
+    /**
+     * Is a bit of openStatus set?
+     * @param bit the index of a site or a bond
+     * @return true if set, vice versa
+     */
+    private boolean isOpenBit(int bit) {
+        return (this.openStatus[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Validates if a site index lies in range [0, sites),
+     * throw an <code>IllegalArgumentException</code> if not
+     * @param site the index of a site
+     * @throws IllegalArgumentException if the index is outside [0, sites)
+     */
+    private void validateSite(int site) {
+        if (site < 0 || site >= this.sites) {
+            String msg = String.format("Site should be between 0 and %d, but %d is found", this.sites - 1, site);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Estimates a percolation threshold, opening random sites or bonds until the system percolates
+     * @param kind whether sites or bonds open
+     * @param dims the extent of each axis
+     * @param periodic whether each axis wraps around
+     * @param trials the number of trials
+     * @return the mean fraction of open sites or bonds when the system percolates
+     */
+    private static double threshold(Kind kind, int[] dims, boolean[] periodic, int trials) {
+        double sum = 0.0;
+        for (int t = 0; t < trials; t++) {
+            LatticePercolation lattice = new LatticePercolation(kind, dims, periodic);
+            int total = kind == Kind.SITE ? lattice.sites() : lattice.bonds();
+            while (!lattice.percolates()) {
+                int site = StdRandom.uniform(lattice.sites());
+                if (kind == Kind.SITE) {
+                    lattice.openSite(site);
+                    continue;
+                }
+                int axis = StdRandom.uniform(dims.length);
+                if (lattice.next(site, axis, lattice.coordinate(site, axis)) >= 0) {
+                    lattice.openBond(site, axis);
+                }
+            }
+            sum += lattice.numberOfOpen() / (double) total;
+        }
+        return sum / trials;
+    }
+
+    // test client
+    public static void main(String[] args) {
+        int trials = args.length < 1 ? 20 : Integer.parseInt(args[0]);
+
+        StdOut.printf("2D site, 128^2            = %f, expecting about 0.593\n",
+                      threshold(Kind.SITE, new int[] {128, 128}, new boolean[] {false, false}, trials));
+        StdOut.printf("2D site, 128^2 periodic   = %f, expecting about 0.593\n",
+                      threshold(Kind.SITE, new int[] {128, 128}, new boolean[] {false, true}, trials));
+        StdOut.printf("2D bond, 128^2            = %f, expecting about 0.5\n",
+                      threshold(Kind.BOND, new int[] {128, 128}, new boolean[] {false, false}, trials));
+        StdOut.printf("3D site, 32^3 periodic    = %f, expecting about 0.312\n",
+                      threshold(Kind.SITE, new int[] {32, 32, 32}, new boolean[] {false, true, true}, trials));
+        StdOut.printf("3D bond, 32^3 periodic    = %f, expecting about 0.249\n",
+                      threshold(Kind.BOND, new int[] {32, 32, 32}, new boolean[] {false, true, true}, trials));
+
+        // opens the same random order of sites on a 2D lattice and on Percolation, comparing their speed
+        int n = args.length < 2 ? 1024 : Integer.parseInt(args[1]);
+        int[] order = new int[n*n];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        StdRandom.shuffle(order);
+
+        StdOut.printf("\nOpening all the sites of a %d-by-%d grid in a random order\n", n, n);
+        long start = System.nanoTime();
+        LatticePercolation lattice = new LatticePercolation(Kind.SITE, new int[] {n, n}, new boolean[] {false, false});
+        for (int site : order) {
+            lattice.openSite(site);
+        }
+        StdOut.printf("LatticePercolation %6d ms\n", (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        Percolation perc = new Percolation(n);
+        perc.openAll(order);
+        StdOut.printf("Percolation        %6d ms\n", (System.nanoTime() - start) / 1_000_000);
+    }
+}
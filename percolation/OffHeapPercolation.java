@@ -0,0 +1,401 @@
+import edu.princeton.cs.algs4.StdOut;
+import edu.princeton.cs.algs4.StdRandom;
+import edu.princeton.cs.algs4.Stopwatch;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A Percolation whose grid state lives outside the Java heap, in direct buffers
+ * or in a memory-mapped file, for grids of up to 65535-by-65535 sites.
+ * Each site takes five bytes: an unsigned parent link, stored plus one so that zero marks a root,
+ * and a state byte holding its open bit, the TOP/BOTTOM flags of its tree and its rank.
+ * Both stores are all zeroes when the grid is all blocked, so a fresh buffer or file needs no initialisation.
+ * Direct buffers are capped by -XX:MaxDirectMemorySize, which defaults to the maximum heap size,
+ * so a large grid in direct buffers needs the flag raised to 5n^2 bytes (about 12.5 GB for a 50000-by-50000 grid),
+ * while a mapped file is only bounded by the disk and the address space
+ */
+public class OffHeapPercolation implements AutoCloseable {
+
+    // The largest length of the side of the grid, so that n^2 parent links fit in 32 unsigned bits
+    public static final int MAX_N = 65535;
+
+    // The open bit of a state byte
+    private static final int OPEN = 1;
+
+    // The flag of a tree containing a site in the top row
+    private static final int TOP = 2;
+
+    // The flag of a tree containing a site in the bottom row
+    private static final int BOTTOM = 4;
+
+    // The flags of a tree touching both the top and the bottom row
+    private static final int SPANNING = TOP | BOTTOM;
+
+    // The number of low bits of a state byte below the rank
+    private static final int RANK_SHIFT = 3;
+
+    // The length of the side (size) of the grid
+    private final int n;
+
+    // The parent link plus one of each site, 0 for a root
+    private final Region parents;
+
+    // The state byte of each site
+    private final Region states;
+
+    // The channel of the mapped file, null if the grid lives in direct buffers
+    private final FileChannel channel;
+
+    // The number of open sites
+    private long openCount = 0;
+
+    // Whether a tree has touched both the top and the bottom row
+    private boolean percolated = false;
+
+    /**
+     * Creates an n-by-n grid in direct buffers, with all sites initially blocked.
+     * The 5n^2 bytes count against -XX:MaxDirectMemorySize, not against the heap
+     * @param n the length of the side of the grid
+     * @throws IllegalArgumentException if n is outside [1, MAX_N]
+     * @throws OutOfMemoryError if the grid does not fit in the direct memory limit
+     */
+    public OffHeapPercolation(int n) {
+        validateSize(n);
+
+        long sites = (long) n * n;
+        this.n = n;
+        this.channel = null;
+        this.parents = new Region(4 * sites, null, 0);
+        this.states = new Region(sites, null, 0);
+    }
+
+    /**
+     * Creates an n-by-n grid mapped to a file, with all sites initially blocked.
+     * The file is created if missing and truncated if present,
+     * so the operating system pages the grid in and out instead of the heap holding it
+     * @param n the length of the side of the grid
+     * @param file the file backing the grid
+     * @throws IllegalArgumentException if n is outside [1, MAX_N] or file is null
+     * @throws UncheckedIOException if the file cannot be opened or mapped
+     */
+    public OffHeapPercolation(int n, Path file) {
+        validateSize(n);
+        if (file == null) throw new IllegalArgumentException("File should not be null");
+
+        long sites = (long) n * n;
+        this.n = n;
+        try {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.parents = new Region(4 * sites, this.channel, 0);
+        this.states = new Region(sites, this.channel, 4 * sites);
+    }
+
+    /**
+     * Opens the site (row, col) if it is not open already
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     */
+    public void open(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        long site = this.xyTo1D(row, col);
+        int state = this.states.get(site);
+
+        // skips if the site is already open
+        if ((state & OPEN) != 0) return;
+
+        // opens the site, flagging it if it is in the first or the last row
+        int flags = 0;
+        if (row == 1) flags |= TOP;
+        if (row == this.n) flags |= BOTTOM;
+        this.states.put(site, state | OPEN | flags);
+        this.openCount++;
+
+        /* connects to neighbouring open sites */
+
+        // if there is an open site to the right (row, col+1)
+        if (col < this.n && this.isOpenSite(site+1)) flags = this.union(site, site+1);
+
+        // if there is an open site to the left (row, col-1)
+        if (col > 1 && this.isOpenSite(site-1)) flags = this.union(site, site-1);
+
+        // if there is an open site above (row-1, col)
+        if (row > 1 && this.isOpenSite(site-this.n)) flags = this.union(site, site-this.n);
+
+        // if there is an open site below (row+1, col)
+        if (row < this.n && this.isOpenSite(site+this.n)) flags = this.union(site, site+this.n);
+
+        // the system percolates once a tree touches both the top and the bottom row
+        if (flags == SPANNING) this.percolated = true;
+    }
+
+    /**
+     * Is the site (row, col) open?
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     * @return true if open, vice versa
+     */
+    public boolean isOpen(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        return this.isOpenSite(this.xyTo1D(row, col));
+    }
+
+    /**
+     * Is the site (row, col) full?
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     * @return true if full, vice versa
+     */
+    public boolean isFull(int row, int col) {
+        validateIndex(row);
+        validateIndex(col);
+
+        // a blocked site is a root without flags, so it is never full
+        return (this.states.get(this.find(this.xyTo1D(row, col))) & TOP) != 0;
+    }
+
+    /**
+     * Returns the number of open sites
+     * @return the number of open sites
+     */
+    public long numberOfOpenSites() {
+        return this.openCount;
+    }
+
+    /**
+     * Does the system percolate?
+     * @return true if the system percolates, vice versa
+     */
+    public boolean percolates() {
+        return this.percolated;
+    }
+
+    /**
+     * Flushes a mapped grid to its file and closes the file.
+     * Direct buffers are released by the garbage collector once the instance is unreachable
+     */
+    @Override
+    public void close() {
+        if (this.channel == null) return;
+
+        try {
+            this.parents.force();
+            this.states.force();
+            this.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Is a site open? The index is not validated
+     * @param site an 1D index in range [0, n^2)
+     * @return true if open, vice versa
+     */
+    private boolean isOpenSite(long site) {
+        return (this.states.get(site) & OPEN) != 0;
+    }
+
+    /**
+     * Returns the parent of a site
+     * @param p an 1D index in range [0, n^2)
+     * @return the parent of the site, or -1 if it is a root
+     */
+    private long parent(long p) {
+        return (this.parents.getInt(p) & 0xFFFFFFFFL) - 1;
+    }
+
+    /**
+     * Returns the root of a site, pointing every other site on the path at its grandparent
+     * @param p an 1D index in range [0, n^2)
+     * @return the root of the site
+     */
+    private long find(long p) {
+        while (true) {
+            long parent = this.parent(p);
+            if (parent < 0) return p;
+
+            long grandparent = this.parent(parent);
+            if (grandparent < 0) return parent;
+
+            this.parents.putInt(p, (int) (grandparent + 1));
+            p = grandparent;
+        }
+    }
+
+    /**
+     * Merges the trees of two open sites, linking the lower ranked root to the other
+     * @param p an 1D index in range [0, n^2)
+     * @param q another 1D index in range [0, n^2)
+     * @return the flags of the merged tree
+     */
+    private int union(long p, long q) {
+        long rootP = this.find(p);
+        long rootQ = this.find(q);
+
+        int stateP = this.states.get(rootP);
+        int stateQ = this.states.get(rootQ);
+        if (rootP == rootQ) return stateP & SPANNING;
+
+        int rankP = stateP >>> RANK_SHIFT;
+        int rankQ = stateQ >>> RANK_SHIFT;
+        int flags = (stateP | stateQ) & SPANNING;
+
+        if (rankP < rankQ) {
+            this.parents.putInt(rootP, (int) (rootQ + 1));
+            this.states.put(rootQ, (rankQ << RANK_SHIFT) | flags | OPEN);
+        } else {
+            this.parents.putInt(rootQ, (int) (rootP + 1));
+            if (rankP == rankQ) rankP++;
+            this.states.put(rootP, (rankP << RANK_SHIFT) | flags | OPEN);
+        }
+
+        return flags;
+    }
+
+    /**
+     * Maps the (row, col) grid co-ordinates to an 1D index in range [0, n^2)
+     * @param row the row co-ordinate
+     * @param col the column co-ordinate
+     * @return an 1D index in range [0, n^2)
+     */
+    private long xyTo1D(int row, int col) {
+        return (long) (row-1)*this.n + (col-1);
+    }
+
+    /**
+     * Validates if an index lies in range [1, n],
+     * throw an <code>IllegalArgumentException</code> if not
+     * @param index a row/col index
+     * @throws IllegalArgumentException if an index is outside [1, n]
+     */
+    private void validateIndex(int index) {
+        if (index < 1 || index > this.n) {
+            String msg = String.format("Index should be between 1 and %d, but %d is found", this.n, index);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * Validates if the length of the side of the grid lies in range [1, MAX_N]
+     * @param n the length of the side of the grid
+     * @throws IllegalArgumentException if n is outside [1, MAX_N]
+     */
+    private static void validateSize(int n) {
+        if (n <= 0 || n > MAX_N) {
+            String msg = String.format("n should be between 1 and %d, but %d found", MAX_N, n);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * A zero-filled, byte-addressed region of off-heap memory split into chunks of 1 GiB,
+     * since a single buffer cannot hold more than 2 GiB
+     */
+    private static final class Region {
+
+        private static final int CHUNK_BITS = 30; // log2 of the number of bytes in a chunk
+        private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1; // the offset of a byte in its chunk
+
+        private final ByteBuffer[] chunks; // the chunks in address order
+
+        /**
+         * Allocates a region in direct buffers, or maps it to a file at a given position
+         * @param bytes the size of the region in bytes
+         * @param channel the channel of the file to map, or null for direct buffers
+         * @param position the position of the region in the file
+         * @throws UncheckedIOException if the file cannot be mapped
+         */
+        Region(long bytes, FileChannel channel, long position) {
+            int count = (int) ((bytes + CHUNK_MASK) >>> CHUNK_BITS);
+            this.chunks = new ByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long offset = (long) i << CHUNK_BITS;
+                int size = (int) Math.min(CHUNK_MASK + 1, bytes - offset);
+                this.chunks[i] = allocate(size, channel, position + offset).order(ByteOrder.nativeOrder());
+            }
+        }
+
+        /**
+         * Allocates a zero-filled direct buffer, or maps a part of a file
+         * @param size the size of the chunk in bytes
+         * @param channel the channel of the file to map, or null for a direct buffer
+         * @param position the position of the chunk in the file
+         * @return the chunk
+         * @throws UncheckedIOException if the file cannot be mapped
+         */
+        private static ByteBuffer allocate(int size, FileChannel channel, long position) {
+            if (channel == null) return ByteBuffer.allocateDirect(size);
+
+            try {
+                return channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        int get(long index) {
+            return this.chunks[(int) (index >>> CHUNK_BITS)].get((int) (index & CHUNK_MASK)) & 0xFF;
+        }
+
+        void put(long index, int value) {
+            this.chunks[(int) (index >>> CHUNK_BITS)].put((int) (index & CHUNK_MASK), (byte) value);
+        }
+
+        int getInt(long index) {
+            long offset = index << 2;
+            return this.chunks[(int) (offset >>> CHUNK_BITS)].getInt((int) (offset & CHUNK_MASK));
+        }
+
+        void putInt(long index, int value) {
+            long offset = index << 2;
+            this.chunks[(int) (offset >>> CHUNK_BITS)].putInt((int) (offset & CHUNK_MASK), value);
+        }
+
+        /**
+         * Writes the changes of a mapped region back to its file
+         */
+        void force() {
+            for (ByteBuffer chunk : this.chunks) {
+                if (chunk instanceof MappedByteBuffer) ((MappedByteBuffer) chunk).force();
+            }
+        }
+    }
+
+    // test client: n [file], in direct buffers unless a file to map is given,
+    // e.g. java -XX:MaxDirectMemorySize=13g OffHeapPercolation 50000, or OffHeapPercolation 50000 grid.bin
+    public static void main(String[] args) {
+        int n = args.length < 1 ? 4096 : Integer.parseInt(args[0]);
+        Stopwatch sw = new Stopwatch();
+
+        OffHeapPercolation perc = args.length < 2
+                ? new OffHeapPercolation(n)
+                : new OffHeapPercolation(n, Path.of(args[1]));
+        try {
+            while (!perc.percolates()) {
+                int row = StdRandom.uniform(1, n+1);
+                int col = StdRandom.uniform(1, n+1);
+                perc.open(row, col);
+            }
+        } finally {
+            perc.close();
+        }
+
+        double time = sw.elapsedTime();
+        StdOut.printf("n = %d, open sites = %d, seconds = %f\n", n, perc.numberOfOpenSites(), time);
+    }
+}
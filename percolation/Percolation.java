@@ -1,36 +1,52 @@
 import edu.princeton.cs.algs4.StdOut;
-import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.Stopwatch;
-import edu.princeton.cs.algs4.WeightedQuickUnionUF;
 
-public class Percolation {
-
-    // The index of the virtual top site, always 0
-    private static final int virtualTop = 0;
+import java.util.Arrays;
 
-    // An UF marking the connections between sites,
-    // with connectionGrid[0] being the virtual top site
-    // and connectionGrid[n^2+1] being the virtual bottom site
-    private final WeightedQuickUnionUF connectionGrid;
+public class Percolation {
 
-    // An UF marking the fullness of sites used by the UI to avoid backwash,
-    // with fullnessGrid[0] being the virtual top site.
-    // A site is full when it is connected to the virtual top site.
-    private final WeightedQuickUnionUF fullnessGrid;
+    // The flags of a tree touching both the top and the bottom row
+    private static final int SPANNING = GridUnionFind.TOP | GridUnionFind.BOTTOM;
 
-    // The index of the virtual bottom site
-    private final int virtualBottom;
+    // An UF marking the connections between sites, with sites in range [0, n^2).
+    // Each tree is flagged when it touches the top or the bottom row, so a site is full
+    // when its tree is flagged TOP, which avoids backwash without virtual sites or a second UF
+    private final GridUnionFind grid;
 
     // The length of the side (size) of the grid
     private final int n;
 
-    // The open status of the sites,
-    // site `i` is open if openStatus[i] is true
-    private boolean[] openStatus;
+    // The open status of the sites packed 64 to a word,
+    // site `i` is open if bit (i % 64) of openStatus[i / 64] is set
+    private final long[] openStatus;
 
     // The number of open sites
     private int openCount = 0;
 
+    // Whether a tree has touched both the top and the bottom row
+    private boolean percolated = false;
+
+    // The number of opens timed into latencies, only counted when PercolationMetrics.ENABLED
+    private long timedOpens = 0;
+
+    // The number of opens in each latency bucket of PercolationMetrics
+    private final long[] latencies = new long[PercolationMetrics.BUCKETS];
+
+    // The listeners of the events of the grid, empty unless one is added
+    private PercolationListener[] listeners = new PercolationListener[0];
+
+    // The newly full sites of an open, reused across opens,
+    // allocated with the first listener
+    private int[] filledSites;
+
+    // The number of entries of filledSites held by opens still notifying their listeners,
+    // so that an open() made by a listener collects its sites after them
+    private int filledTop = 0;
+
+    // The sites visited while collecting newly full sites, a bit per site like openStatus,
+    // allocated with the first listener and left all clear between opens
+    private long[] visited;
+
     // creates n-by-n grid, with all sites initially blocked
     public Percolation(int n) {
         // validates argument n
@@ -41,10 +57,8 @@ public class Percolation {
 
         // initialises the instance variables
         this.n = n;
-        this.virtualBottom = n*n + 1;
-        this.openStatus = new boolean[n*n+1];
-        this.connectionGrid = new WeightedQuickUnionUF(n*n+2);
-        this.fullnessGrid = new WeightedQuickUnionUF(n*n+1);
+        this.openStatus = new long[(n*n + 63) >>> 6];
+        this.grid = new GridUnionFind(n*n);
     }
 
     /**
@@ -56,47 +70,54 @@ public class Percolation {
         validateIndex(row);
         validateIndex(col);
 
-        int site = this.xyTo1D(row, col);
-
-        // skips if the site is already open
-        if (this.openStatus[site]) return;
-
-        // opens the site and increments counter
-        this.openStatus[site] = true;
-        this.openCount++;
-
-        // connects to the virtual top site if the site is in the first row
-        if (row == 1) this.connectNeighbour(site, virtualTop);
-
-        // connects to the virtual bottom site if the site is in the last row
-        if (row == this.n) this.connectionGrid.union(this.virtualBottom, site);
-
-        /* connects to neighbouring open sites */
+        this.openCounted(this.xyTo1D(row, col));
+    }
 
-        // if there is an open site to the right (row, col+1)
-        if (col < this.n && this.isOpen(row, col+1)) {
-            int right = this.xyTo1D(row, col+1);
-            this.connectNeighbour(site, right);
+    /**
+     * Opens the sites (rows[i], cols[i]) in order, skipping those already open.
+     * All the co-ordinates are validated up front, so no site is opened if any is invalid
+     * @param rows the row co-ordinates
+     * @param cols the column co-ordinates
+     * @throws IllegalArgumentException if the arrays are null or of different lengths,
+     *                                  or a co-ordinate is outside [1, n]
+     */
+    public void openAll(int[] rows, int[] cols) {
+        if (rows == null || cols == null) throw new IllegalArgumentException("Rows and cols should not be null");
+        if (rows.length != cols.length) {
+            String msg = String.format("Rows and cols should be of the same length, but %d and %d found",
+                                       rows.length, cols.length);
+            throw new IllegalArgumentException(msg);
         }
-
-        // if there is an open site to the left (row, col-1)
-        if (col > 1 && this.isOpen(row, col-1)) {
-            int left = this.xyTo1D(row, col-1);
-            this.connectNeighbour(site, left);
+        for (int i = 0; i < rows.length; i++) {
+            validateIndex(rows[i]);
+            validateIndex(cols[i]);
         }
 
-        // if there is an open site above (row-1, col)
-        if (row > 1 && this.isOpen(row-1, col)) {
-            int above = this.xyTo1D(row-1, col);
-            this.connectNeighbour(site, above);
+        for (int i = 0; i < rows.length; i++) {
+            this.openCounted(this.xyTo1D(rows[i], cols[i]));
         }
+    }
 
-        // if there is an open site below (row+1, col)
-        if (row < this.n && this.isOpen(row+1, col)) {
-            int below = this.xyTo1D(row+1, col);
-            this.connectNeighbour(site, below);
+    /**
+     * Opens the sites in order, skipping those already open.
+     * A site is given by its row-major index (row-1)*n + (col-1) in range [0, n^2).
+     * All the indices are validated up front, so no site is opened if any is invalid
+     * @param sites the row-major indices of the sites
+     * @throws IllegalArgumentException if sites is null or an index is outside [0, n^2)
+     */
+    public void openAll(int[] sites) {
+        if (sites == null) throw new IllegalArgumentException("Sites should not be null");
+        int count = this.n*this.n;
+        for (int site : sites) {
+            if (site < 0 || site >= count) {
+                String msg = String.format("Site should be between 0 and %d, but %d is found", count-1, site);
+                throw new IllegalArgumentException(msg);
+            }
         }
 
+        for (int site : sites) {
+            this.openCounted(site);
+        }
     }
 
     /**
@@ -109,7 +130,7 @@ public class Percolation {
         validateIndex(row);
         validateIndex(col);
 
-        return this.openStatus[this.xyTo1D(row, col)];
+        return this.isOpenSite(this.xyTo1D(row, col));
     }
 
     /**
@@ -124,7 +145,8 @@ public class Percolation {
 
         int site = this.xyTo1D(row, col);
 
-        return this.fullnessGrid.find(virtualTop) == this.fullnessGrid.find(site);
+        // a blocked site is a singleton without flags, so it is never full
+        return (this.grid.flags(site) & GridUnionFind.TOP) != 0;
     }
 
     /**
@@ -140,18 +162,326 @@ public class Percolation {
      * @return true if the system percolates, vice versa
      */
     public boolean percolates() {
-        // the system percolates if the virtual top site is connected to the virtual bottom site
-        return this.connectionGrid.find(virtualTop) == this.connectionGrid.find(this.virtualBottom);
+        return this.percolated;
     }
 
     /**
-     * Maps the (row, col) grid co-ordinates to an 1D index in range [1, n^2]
+     * Returns a snapshot of the counters of the union-find and of the latency of opens,
+     * accumulated since the grid was created, across resets.
+     * All zeroes unless the JVM runs with -Dpercolation.metrics=true
+     * @return a snapshot of the counters
+     */
+    public PercolationMetrics metrics() {
+        return this.grid.metrics(this.timedOpens, this.latencies);
+    }
+
+    /**
+     * Opens a site like openSite(), timing it when metrics are on.
+     * The check is on a static final flag, so with metrics off this is a plain call to openSite()
+     * @param site an 1D index in range [0, n^2)
+     */
+    private void openCounted(int site) {
+        if (!PercolationMetrics.ENABLED) {
+            this.openSite(site);
+            return;
+        }
+
+        long start = System.nanoTime();
+        this.openSite(site);
+        this.latencies[PercolationMetrics.bucket(System.nanoTime() - start)]++;
+        this.timedOpens++;
+    }
+
+    /**
+     * Opens a site if it is not open already, connecting it to its open neighbours.
+     * The index is not validated, nor are those of the neighbours
+     * @param site an 1D index in range [0, n^2)
+     */
+    private void openSite(int site) {
+        long mask = 1L << site;
+        int word = site >>> 6;
+
+        // skips if the site is already open
+        if ((this.openStatus[word] & mask) != 0) return;
+
+        // opens the site and increments counter
+        this.openStatus[word] |= mask;
+        this.openCount++;
+
+        // 0-based co-ordinates of the site
+        int row = site / this.n;
+        int col = site - row*this.n;
+
+        // flags the tree of the site if the site is in the first or the last row
+        int flags = 0;
+        if (row == 0) flags |= GridUnionFind.TOP;
+        if (row == this.n-1) flags |= GridUnionFind.BOTTOM;
+        if (flags != 0) flags = this.grid.mark(site, flags);
+
+        // leaves the plain path below free of any event bookkeeping
+        if (this.listeners.length != 0) {
+            this.connectNotifying(site, row, col, flags);
+            return;
+        }
+
+        /* connects to neighbouring open sites */
+
+        // if there is an open site to the right (row, col+1)
+        if (col < this.n-1 && this.isOpenSite(site+1)) {
+            flags = this.grid.union(site, site+1);
+        }
+
+        // if there is an open site to the left (row, col-1)
+        if (col > 0 && this.isOpenSite(site-1)) {
+            flags = this.grid.union(site, site-1);
+        }
+
+        // if there is an open site above (row-1, col)
+        if (row > 0 && this.isOpenSite(site-this.n)) {
+            flags = this.grid.union(site, site-this.n);
+        }
+
+        // if there is an open site below (row+1, col)
+        if (row < this.n-1 && this.isOpenSite(site+this.n)) {
+            flags = this.grid.union(site, site+this.n);
+        }
+
+        // the system percolates once a tree touches both the top and the bottom row
+        if (flags == SPANNING) this.percolated = true;
+    }
+
+    /**
+     * Connects a newly opened site to its open neighbours like openSite(),
+     * publishing the events of the open to the listeners.
+     * The grid is fully updated before the first event, so a listener may call open() again
+     * @param site an 1D index in range [0, n^2)
+     * @param row the 0-based row of the site
+     * @param col the 0-based column of the site
+     * @param flags the flags of the site before connecting
+     */
+    private void connectNotifying(int site, int row, int col, int flags) {
+        // the open neighbours, a bit per direction in the order right, left, above, below
+        int open = 0;
+        if (col < this.n-1 && this.isOpenSite(site+1)) open |= 1;
+        if (col > 0 && this.isOpenSite(site-1)) open |= 2;
+        if (row > 0 && this.isOpenSite(site-this.n)) open |= 4;
+        if (row < this.n-1 && this.isOpenSite(site+this.n)) open |= 8;
+
+        // the merged cluster is full if the site or any neighbouring cluster touches the top row
+        boolean full = (flags & GridUnionFind.TOP) != 0;
+        for (int bits = open; bits != 0; bits &= bits - 1) {
+            int neighbour = this.neighbour(site, bits & -bits);
+            if ((this.grid.flags(neighbour) & GridUnionFind.TOP) != 0) full = true;
+        }
+
+        // before merging, collects the site and the sites of every neighbouring cluster that is not yet full,
+        // after the entries held by any enclosing open
+        int base = this.filledTop;
+        int filled = base;
+        if (full) {
+            this.markVisited(site);
+            this.filledSites[filled++] = site;
+            for (int bits = open; bits != 0; bits &= bits - 1) {
+                int neighbour = this.neighbour(site, bits & -bits);
+                if (this.isVisited(neighbour) || (this.grid.flags(neighbour) & GridUnionFind.TOP) != 0) continue;
+                filled = this.collectCluster(neighbour, filled);
+            }
+        }
+
+        // merges the clusters, remembering the neighbours whose cluster was not yet joined
+        int merged = 0;
+        for (int bits = open; bits != 0; bits &= bits - 1) {
+            int neighbour = this.neighbour(site, bits & -bits);
+            if (!this.grid.connected(site, neighbour)) merged |= bits & -bits;
+            flags = this.grid.union(site, neighbour);
+        }
+
+        // clears the visited marks before any listener can run
+        for (int i = base; i < filled; i++) {
+            int s = this.filledSites[i];
+            this.visited[s >>> 6] &= ~(1L << s);
+        }
+
+        // the system percolates once a tree touches both the top and the bottom row
+        boolean percolating = flags == SPANNING && !this.percolated;
+        if (percolating) this.percolated = true;
+
+        this.filledTop = filled;
+        try {
+            for (PercolationListener listener : this.listeners) {
+                listener.siteOpened(site);
+            }
+            for (int bits = merged; bits != 0; bits &= bits - 1) {
+                int neighbour = this.neighbour(site, bits & -bits);
+                for (PercolationListener listener : this.listeners) {
+                    listener.clustersMerged(site, neighbour);
+                }
+            }
+            if (filled != base) {
+                // the sites of an open made by a listener start past those held, so they are copied out
+                int[] sites = base == 0 ? this.filledSites : Arrays.copyOfRange(this.filledSites, base, filled);
+                for (PercolationListener listener : this.listeners) {
+                    listener.sitesFilled(sites, filled - base);
+                }
+            }
+            if (percolating) {
+                for (PercolationListener listener : this.listeners) {
+                    listener.percolated();
+                }
+            }
+        } finally {
+            this.filledTop = base;
+        }
+    }
+
+    /**
+     * Returns the neighbour of a site in a direction. The site is not validated, nor is the neighbour
+     * @param site an 1D index in range [0, n^2)
+     * @param direction 1, 2, 4 or 8 for right, left, above or below
+     * @return the index of the neighbour
+     */
+    private int neighbour(int site, int direction) {
+        switch (direction) {
+            case 1: return site+1;
+            case 2: return site-1;
+            case 4: return site-this.n;
+            default: return site+this.n;
+        }
+    }
+
+    /**
+     * Appends the sites of the open cluster of a site to filledSites by a breadth-first search,
+     * using filledSites itself as the queue, and marks them as visited
+     * @param start an open site whose cluster is not yet full
+     * @param filled the number of entries of filledSites in use
+     * @return the number of entries of filledSites in use after the search
+     */
+    private int collectCluster(int start, int filled) {
+        this.markVisited(start);
+        this.filledSites[filled++] = start;
+
+        for (int head = filled-1; head < filled; head++) {
+            int s = this.filledSites[head];
+            int row = s / this.n;
+            int col = s - row*this.n;
+
+            if (col < this.n-1) filled = this.visitOpen(s+1, filled);
+            if (col > 0) filled = this.visitOpen(s-1, filled);
+            if (row > 0) filled = this.visitOpen(s-this.n, filled);
+            if (row < this.n-1) filled = this.visitOpen(s+this.n, filled);
+        }
+
+        return filled;
+    }
+
+    /**
+     * Appends a site to filledSites if it is open and not yet visited
+     * @param s an 1D index in range [0, n^2)
+     * @param filled the number of entries of filledSites in use
+     * @return the number of entries of filledSites in use afterwards
+     */
+    private int visitOpen(int s, int filled) {
+        if (!this.isOpenSite(s) || this.isVisited(s)) return filled;
+
+        this.markVisited(s);
+        this.filledSites[filled++] = s;
+        return filled;
+    }
+
+    /**
+     * Has a site been visited while collecting newly full sites?
+     * @param site an 1D index in range [0, n^2)
+     * @return true if visited, vice versa
+     */
+    private boolean isVisited(int site) {
+        return (this.visited[site >>> 6] & (1L << site)) != 0;
+    }
+
+    /**
+     * Marks a site as visited while collecting newly full sites
+     * @param site an 1D index in range [0, n^2)
+     */
+    private void markVisited(int site) {
+        this.visited[site >>> 6] |= 1L << site;
+    }
+
+    /**
+     * Registers a listener of the events of the grid.
+     * Opening a site costs no event bookkeeping while no listener is registered
+     * @param listener the listener
+     * @throws IllegalArgumentException if listener is null
+     */
+    public void addListener(PercolationListener listener) {
+        if (listener == null) throw new IllegalArgumentException("Listener should not be null");
+
+        // the scratch space of the events, a site can only become full once
+        if (this.filledSites == null) {
+            this.filledSites = new int[this.n*this.n];
+            this.visited = new long[this.openStatus.length];
+        }
+
+        PercolationListener[] temp = new PercolationListener[this.listeners.length + 1];
+        for (int i = 0; i < this.listeners.length; i++) {
+            temp[i] = this.listeners[i];
+        }
+        temp[this.listeners.length] = listener;
+        this.listeners = temp;
+    }
+
+    /**
+     * Unregisters a listener of the events of the grid, if it is registered
+     * @param listener the listener
+     */
+    public void removeListener(PercolationListener listener) {
+        for (int i = 0; i < this.listeners.length; i++) {
+            if (this.listeners[i] != listener) continue;
+
+            PercolationListener[] temp = new PercolationListener[this.listeners.length - 1];
+            for (int j = 0, k = 0; j < this.listeners.length; j++) {
+                if (j != i) temp[k++] = this.listeners[j];
+            }
+            this.listeners = temp;
+            return;
+        }
+    }
+
+    /**
+     * Is a site open? The index is not validated
+     * @param site an 1D index in range [0, n^2)
+     * @return true if open, vice versa
+     */
+    private boolean isOpenSite(int site) {
+        return (this.openStatus[site >>> 6] & (1L << site)) != 0;
+    }
+
+    /**
+     * Blocks all the sites again, finding the open sites from the set bits of openStatus,
+     * in time proportional to n^2/64 words plus the number of open sites.
+     * The instance can then be reused for another trial without allocating a new grid
+     */
+    public void reset() {
+        for (int word = 0; word < this.openStatus.length && this.openCount > 0; word++) {
+            long bits = this.openStatus[word];
+            if (bits == 0) continue;
+
+            // resets the tree of each open site of the word, lowest bit first
+            this.openStatus[word] = 0;
+            this.openCount -= Long.bitCount(bits);
+            for (; bits != 0; bits &= bits - 1) {
+                this.grid.reset((word << 6) + Long.numberOfTrailingZeros(bits));
+            }
+        }
+        this.percolated = false;
+    }
+
+    /**
+     * Maps the (row, col) grid co-ordinates to an 1D index in range [0, n^2)
      * @param row the row co-ordinate
      * @param col the column co-ordinate
-     * @return an 1D index in range [1, n^2]
+     * @return an 1D index in range [0, n^2)
      */
     private int xyTo1D(int row, int col) {
-        return (row-1)*this.n + col;
+        return (row-1)*this.n + (col-1);
     }
 
     /**
@@ -167,30 +497,32 @@ public class Percolation {
         }
     }
 
-    /**
-     * Connects a site to an open neighbour in both connectionGrid and fullnessGrid
-     * @param site the 1D index of the site
-     * @param neighbour the 1D index of the neighbouring open site
-     */
-    private void connectNeighbour(int site, int neighbour) {
-        this.connectionGrid.union(site, neighbour);
-        this.fullnessGrid.union(site, neighbour);
-    }
-
-    // test client (optional)
+    // test client (optional): [seed]
     public static void main(String[] args) {
         // recreating Timing Test 3
         int n = 4096;
         Stopwatch sw = new Stopwatch();
 
         Percolation perc = new Percolation(n);
-        while (!perc.percolates()) {
-            int row = StdRandom.uniform(1, n+1);
-            int col = StdRandom.uniform(1, n+1);
-            perc.open(row, col);
+
+        // opens the sites in a random permutation, drawn one Fisher-Yates step at a time,
+        // from StdRandom unless a seed is given for the generator named by -Dpercolation.random
+        RandomSource random = args.length < 1 ? RandomSource.stdRandom()
+                : RandomSource.named(System.getProperty("percolation.random", "splittable"), Long.parseLong(args[0]));
+        int[] order = new int[n*n];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        for (int k = 0; !perc.percolates(); k++) {
+            int j = random.nextInt(k, order.length);
+            int site = order[j];
+            order[j] = order[k];
+            order[k] = site;
+            perc.open(site / n + 1, site % n + 1);
         }
 
         double time = sw.elapsedTime();
-        StdOut.printf("n = %d, seconds = %f", n, time);
+        StdOut.printf("n = %d, seconds = %f\n", n, time);
+        if (PercolationMetrics.isEnabled()) StdOut.println(perc.metrics());
     }
 }
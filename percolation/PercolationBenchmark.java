@@ -0,0 +1,255 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A benchmark harness for Percolation and PercolationStats, timing open(), isFull() and the
+ * open-until-percolates loop across grid sizes, and whole PercolationStats runs across grid sizes,
+ * thread counts and trial modes. Each benchmark runs warm-up iterations before the measured ones,
+ * and the results are written as JSON (benchmark, params, primaryMetric with score, scoreError, scoreUnit
+ * and rawData), so that runs before and after a change of union-find backend can be compared.
+ * The harness runs in a single JVM without forks or blackholes, so its scores are not JMH results,
+ * even though the score error is the half-width of the 99.9% Student's t interval like JMH's.
+ * The default grid sizes only make a smoke run of a few seconds; real measurements give the sizes
+ * (and thread counts) explicitly, knowing that every PercolationStats trial opens some 0.6n^2 sites
+ */
+public class PercolationBenchmark {
+
+    // The number of unmeasured iterations letting the JIT compile the hot paths
+    private static final int WARMUP_ITERATIONS = 3;
+
+    // The number of measured iterations
+    private static final int MEASURED_ITERATIONS = 5;
+
+    // The quantile of Student's t scaling the standard error into the half-width of the 99.9% interval
+    private static final double T_QUANTILE = studentT(MEASURED_ITERATIONS - 1, 0.999);
+
+    // The number of trials of a PercolationStats run
+    private static final int STATS_TRIALS = 64;
+
+    // The fixed seed of every benchmark, so that all the runs do the same work
+    private static final long SEED = 20220828L;
+
+    // A sink for the results of the benchmarks, so that the JIT cannot drop the work
+    private static volatile long sink;
+
+    /**
+     * A benchmark body, running one iteration and returning the number of operations it made
+     */
+    private interface Body {
+        long run();
+    }
+
+    /**
+     * Runs a benchmark and returns its result as a JSON object
+     * @param name the name of the benchmark
+     * @param params the parameters of the benchmark, as a JSON object
+     * @param body the body of the benchmark
+     * @return the result as a JSON object, scored in nanoseconds per operation
+     */
+    private static String measure(String name, String params, Body body) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += body.run();
+        }
+
+        double[] scores = new double[MEASURED_ITERATIONS];
+        for (int i = 0; i < MEASURED_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            long ops = body.run();
+            scores[i] = (System.nanoTime() - start) / (double) ops;
+            sink += ops;
+        }
+
+        // the half-width of the 99.9% confidence interval
+        double mean = 0.0;
+        for (double score : scores) mean += score;
+        mean /= scores.length;
+        double variance = 0.0;
+        for (double score : scores) variance += (score - mean) * (score - mean);
+        double error = T_QUANTILE * Math.sqrt(variance / (scores.length - 1)) / Math.sqrt(scores.length);
+
+        StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < scores.length; i++) {
+            if (i > 0) raw.append(", ");
+            raw.append(String.format(Locale.ROOT, "%.3f", scores[i]));
+        }
+
+        StdOut.printf("%-28s %-40s %14.3f +- %.3f ns/op\n", name, params, mean, error);
+        // the root locale keeps decimal points in the JSON whatever the default locale
+        return String.format(Locale.ROOT, "  {\"benchmark\": \"%s\", \"params\": %s, \"warmupIterations\": %d, "
+                             + "\"measurementIterations\": %d, \"primaryMetric\": {\"score\": %.3f, "
+                             + "\"scoreError\": %.3f, \"scoreUnit\": \"ns/op\", \"rawData\": [[%s]]}}",
+                             name, params, WARMUP_ITERATIONS, MEASURED_ITERATIONS, mean, error, raw);
+    }
+
+    /**
+     * Returns the t such that a Student's t variate lies in [-t, t] with a given probability, by bisection
+     * @param df the degrees of freedom
+     * @param confidence the probability
+     * @return the two-sided quantile
+     */
+    private static double studentT(int df, double confidence) {
+        double lo = 0.0;
+        double hi = 1e7;
+        for (int i = 0; i < 100; i++) {
+            double mid = (lo + hi) / 2;
+            if (twoSidedProbability(df, mid) < confidence) lo = mid;
+            else hi = mid;
+        }
+        return (lo + hi) / 2;
+    }
+
+    /**
+     * Returns the probability that a Student's t variate lies in [-t, t],
+     * by the finite series for integer degrees of freedom (Abramowitz and Stegun 26.7.3 and 26.7.4)
+     * @param df the degrees of freedom
+     * @param t a non-negative bound
+     * @return the probability
+     */
+    private static double twoSidedProbability(int df, double t) {
+        double theta = Math.atan(t / Math.sqrt(df));
+        double cos = Math.cos(theta);
+        double cos2 = cos * cos;
+
+        double sum = 0.0;
+        if (df % 2 == 0) {
+            // 1 + (1/2) cos^2 + (1*3)/(2*4) cos^4 + ... up to cos^(df-2)
+            double term = 1.0;
+            for (int k = 0; k <= df - 2; k += 2) {
+                sum += term;
+                term *= cos2 * (k + 1) / (k + 2);
+            }
+            return Math.sin(theta) * sum;
+        }
+
+        // cos + (2/3) cos^3 + (2*4)/(3*5) cos^5 + ... up to cos^(df-2)
+        double term = cos;
+        for (int k = 1; k <= df - 2; k += 2) {
+            sum += term;
+            term *= cos2 * (k + 1) / (k + 2);
+        }
+        return 2 / Math.PI * (theta + Math.sin(theta) * sum);
+    }
+
+    /**
+     * Returns a random permutation of the row-major indices of an n-by-n grid
+     * @param n the length of the side of the grid
+     * @return a random permutation of [0, n^2)
+     */
+    private static int[] permutation(int n) {
+        SplittableRandom random = new SplittableRandom(SEED);
+        int[] order = new int[n*n];
+        for (int i = 0; i < order.length; i++) {
+            int j = random.nextInt(i + 1);
+            order[i] = order[j];
+            order[j] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Parses a comma-separated list of integers
+     * @param list the list
+     * @return the integers
+     */
+    private static int[] parseList(String list) {
+        String[] items = list.split(",");
+        int[] values = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            values[i] = Integer.parseInt(items[i].trim());
+        }
+        return values;
+    }
+
+    // runs the benchmarks: [output.json] [sizes, e.g. 256,1024,4096] [threads, e.g. 1,4,16],
+    // a smoke run on small grids by default
+    public static void main(String[] args) {
+        Path output = args.length < 1 ? null : Path.of(args[0]);
+        int[] sizes = args.length < 2 ? new int[] {64, 256} : parseList(args[1]);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = args.length < 3 ? (cores == 1 ? new int[] {1} : new int[] {1, cores}) : parseList(args[2]);
+
+        StringBuilder json = new StringBuilder("[\n");
+        String separator = "";
+
+        for (int n : sizes) {
+            int[] order = permutation(n);
+            Percolation perc = new Percolation(n);
+            String params = String.format("{\"n\": \"%d\"}", n);
+
+            // opens every site of the permutation, that is until the grid is fully open
+            json.append(separator).append(measure("Percolation.open", params, () -> {
+                perc.reset();
+                for (int site : order) {
+                    perc.open(site / n + 1, site % n + 1);
+                }
+                return order.length;
+            }));
+            separator = ",\n";
+
+            // opens sites in the permutation order until the grid percolates, checking after every open
+            json.append(separator).append(measure("Percolation.percolates", params, () -> {
+                perc.reset();
+                int k = 0;
+                while (!perc.percolates()) {
+                    int site = order[k++];
+                    perc.open(site / n + 1, site % n + 1);
+                }
+                return k;
+            }));
+
+            // queries every site of a grid that has just percolated, opened in the permutation order
+            Percolation percolated = new Percolation(n);
+            for (int k = 0; !percolated.percolates(); k++) {
+                int site = order[k];
+                percolated.open(site / n + 1, site % n + 1);
+            }
+            json.append(separator).append(measure("Percolation.isFull", params, () -> {
+                long full = 0;
+                for (int row = 1; row <= n; row++) {
+                    for (int col = 1; col <= n; col++) {
+                        if (percolated.isFull(row, col)) full++;
+                    }
+                }
+                sink += full;
+                return (long) n * n;
+            }));
+        }
+
+        // whole PercolationStats runs, scored per trial
+        for (int n : sizes) {
+            for (int threads : threadCounts) {
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                try {
+                    for (PercolationStats.TrialMode mode : PercolationStats.TrialMode.values()) {
+                        String params = String.format("{\"n\": \"%d\", \"threads\": \"%d\", \"mode\": \"%s\"}",
+                                                      n, threads, mode);
+                        json.append(separator).append(measure("PercolationStats", params, () -> {
+                            PercolationStats stats = new PercolationStats(n, STATS_TRIALS, SEED, pool, mode);
+                            sink += Double.doubleToLongBits(stats.mean());
+                            return STATS_TRIALS;
+                        }));
+                    }
+                } finally {
+                    pool.shutdown();
+                }
+            }
+        }
+
+        json.append("\n]\n");
+        if (output == null) return;
+        try {
+            Files.write(output, json.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        StdOut.printf("Results written to %s\n", output);
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * A listener of the incremental events of a Percolation, so that a view can follow the grid
+ * without rescanning every site after each open. Sites are given by their row-major index
+ * (row-1)*n + (col-1) in range [0, n^2). Events are delivered synchronously from open(),
+ * in the order siteOpened, clustersMerged, sitesFilled and percolated, after the grid is updated,
+ * so a listener may itself call open()
+ */
+public interface PercolationListener {
+
+    /**
+     * Called when a blocked site is opened
+     * @param site the index of the opened site
+     */
+    default void siteOpened(int site) { }
+
+    /**
+     * Called when an opened site joins the cluster of an open neighbour it was not yet connected to
+     * @param site the index of the opened site
+     * @param neighbour the index of the neighbour
+     */
+    default void clustersMerged(int site, int neighbour) { }
+
+    /**
+     * Called when sites become full. The array is reused by later events,
+     * so it is only valid until this call returns
+     * @param sites the indices of the newly full sites in its first count entries
+     * @param count the number of newly full sites
+     */
+    default void sitesFilled(int[] sites, int count) { }
+
+    /**
+     * Called once, when the system percolates for the first time
+     */
+    default void percolated() { }
+}
@@ -0,0 +1,139 @@
+/**
+ * A snapshot of the counters of a Percolation: how many finds and unions its opens make,
+ * how long the find paths get, and how the latency of an open is distributed.
+ * Counting is switched on for the whole JVM with -Dpercolation.metrics=true. The switch is read
+ * once into a static final field, so when it is off the JIT folds every counting branch away
+ * and a snapshot holds zeroes only
+ */
+public class PercolationMetrics {
+
+    // Whether the counters are on, read once at class initialisation
+    static final boolean ENABLED = Boolean.getBoolean("percolation.metrics");
+
+    // The number of latency buckets, bucket i holding the opens that took [2^i, 2^(i+1)) nanoseconds
+    static final int BUCKETS = 64;
+
+    private final long opens; // the number of timed opens
+    private final long finds; // the number of finds
+    private final long unions; // the number of unions, including those of already connected sites
+    private final long pathSteps; // the number of parent links followed by all the finds
+    private final int longestPath; // the most parent links followed by a single find
+    private final int highestRank; // the highest rank of a root, an upper bound of the height of a tree
+    private final long[] latencies; // the number of opens in each latency bucket
+
+    PercolationMetrics(long opens, long finds, long unions, long pathSteps, int longestPath, int highestRank,
+                       long[] latencies) {
+        this.opens = opens;
+        this.finds = finds;
+        this.unions = unions;
+        this.pathSteps = pathSteps;
+        this.longestPath = longestPath;
+        this.highestRank = highestRank;
+        this.latencies = latencies.clone();
+    }
+
+    /**
+     * Are the counters switched on?
+     * @return true if -Dpercolation.metrics=true, vice versa
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the number of timed opens, including those of sites already open
+     * @return the number of timed opens
+     */
+    public long opens() {
+        return this.opens;
+    }
+
+    /**
+     * Returns the number of finds
+     * @return the number of finds
+     */
+    public long finds() {
+        return this.finds;
+    }
+
+    /**
+     * Returns the number of unions, including those of sites already connected
+     * @return the number of unions
+     */
+    public long unions() {
+        return this.unions;
+    }
+
+    /**
+     * Returns the mean number of parent links followed by a find
+     * @return the mean length of a find path
+     */
+    public double meanPathLength() {
+        return this.finds == 0 ? 0.0 : this.pathSteps / (double) this.finds;
+    }
+
+    /**
+     * Returns the most parent links followed by a single find
+     * @return the longest find path
+     */
+    public int longestPath() {
+        return this.longestPath;
+    }
+
+    /**
+     * Returns the highest rank of a root, an upper bound of the height of any tree
+     * @return the highest rank
+     */
+    public int highestRank() {
+        return this.highestRank;
+    }
+
+    /**
+     * Returns the number of opens that took [2^i, 2^(i+1)) nanoseconds, for i in [0, 64)
+     * @return a copy of the latency histogram
+     */
+    public long[] latencyHistogram() {
+        return this.latencies.clone();
+    }
+
+    /**
+     * Returns an upper bound of a quantile of the latency of an open,
+     * the upper end of the bucket holding it
+     * @param q the quantile, in [0, 1]
+     * @return the upper bound in nanoseconds, or 0 if no open was timed
+     * @throws IllegalArgumentException if q is outside [0, 1]
+     */
+    public long latencyQuantile(double q) {
+        if (!(q >= 0.0 && q <= 1.0)) {
+            String msg = String.format("q should be between 0 and 1, but %f is found", q);
+            throw new IllegalArgumentException(msg);
+        }
+        if (this.opens == 0) return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(q * this.opens));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.latencies[i];
+            if (seen >= rank) return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << (i + 1)) - 1;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the bucket of a latency
+     * @param nanos a latency in nanoseconds
+     * @return the bucket i such that the latency lies in [2^i, 2^(i+1)), 0 for latencies below 2
+     */
+    static int bucket(long nanos) {
+        return nanos <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("opens = %d, finds = %d, unions = %d, mean path = %.3f, longest path = %d, "
+                             + "highest rank = %d, open latency p50/p99/p99.9 <= %d/%d/%d ns",
+                             this.opens, this.finds, this.unions, this.meanPathLength(), this.longestPath,
+                             this.highestRank, this.latencyQuantile(0.5), this.latencyQuantile(0.99),
+                             this.latencyQuantile(0.999));
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread-safe pool of n-by-n Percolation instances.
+ * Released instances are reset and handed out again, so that a worker
+ * running many trials reuses one grid instead of allocating a new one per trial
+ */
+public class PercolationPool {
+
+    // The length of the side (size) of the grids in the pool
+    private final int n;
+
+    // The reset instances waiting to be reused
+    private final ConcurrentLinkedQueue<Percolation> idle = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Creates an empty pool of n-by-n grids
+     * @param n the length of the side of the grids
+     * @throws IllegalArgumentException if n is not positive
+     */
+    public PercolationPool(int n) {
+        if (n <= 0) {
+            String msg = String.format("n should be > 0, but %d found", n);
+            throw new IllegalArgumentException(msg);
+        }
+
+        this.n = n;
+    }
+
+    /**
+     * Returns an all-blocked grid, reusing a released one if there is any
+     * @return an all-blocked n-by-n grid
+     */
+    public Percolation acquire() {
+        Percolation perc = this.idle.poll();
+        return perc != null ? perc : new Percolation(this.n);
+    }
+
+    /**
+     * Resets a grid acquired from this pool and returns it to the pool.
+     * The grid must not be used by the caller afterwards
+     * @param perc a grid acquired from this pool
+     * @throws IllegalArgumentException if perc is null
+     */
+    public void release(Percolation perc) {
+        if (perc == null) throw new IllegalArgumentException("Percolation should not be null");
+
+        perc.reset();
+        this.idle.offer(perc);
+    }
+}
@@ -1,9 +1,33 @@
 import edu.princeton.cs.algs4.StdOut;
-import edu.princeton.cs.algs4.StdRandom;
 import edu.princeton.cs.algs4.StdStats;
 
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
 public class PercolationStats {
 
+    /**
+     * The order in which a trial opens the sites of its grid
+     */
+    public enum TrialMode {
+        // draws random sites, including those already open, until the system percolates
+        UNIFORM,
+        // opens the sites in a random permutation, so that every draw opens a new site
+        PERMUTATION,
+        // sweeps the sites in a random permutation on a single union-find, see PercolationSweep
+        SWEEP
+    }
+
+    // the fewest trials giving a sample standard deviation
+    private static final int MIN_TRIALS = 2;
+
+    // the fewest trials before the confidence interval is trusted to stop an adaptive run,
+    // as a couple of close samples would otherwise stop it at once
+    private static final int MIN_STOPPING_TRIALS = 30;
+
     // numbers of open sites when the subject percolate
     private final double[] thresholds;
 
@@ -20,20 +44,339 @@ public class PercolationStats {
         // size of the grid
         this.numCount = trials;
 
-        // perform independent trials
+        // perform independent trials on a single grid, reset between trials
+        RandomSource random = RandomSource.stdRandom();
+        Percolation perc = new Percolation(n);
         for (int i = 0; i < trials; i++) {
             // initialise a single trial
-            Percolation perc = new Percolation(n);
+            perc.reset();
+
+            // records the number of open site when percolates
+            thresholds[i] = uniformTrial(n, random, perc);
+        }
+    }
+
+    /**
+     * Performs independent trials on an n-by-n grid concurrently on the common fork-join pool,
+     * opening the sites of each trial in a random permutation
+     * @param n the length of the side of the grid
+     * @param trials the number of trials
+     * @param seed the seed of the random streams
+     * @throws IllegalArgumentException if n or trials is not positive
+     */
+    public PercolationStats(int n, int trials, long seed) {
+        this(n, trials, seed, ForkJoinPool.commonPool(), TrialMode.PERMUTATION);
+    }
+
+    /**
+     * Performs independent trials on an n-by-n grid concurrently on a given fork-join pool,
+     * opening the sites of each trial in a random permutation
+     * @param n the length of the side of the grid
+     * @param trials the number of trials
+     * @param seed the seed of the random streams
+     * @param pool the fork-join pool running the trials
+     * @throws IllegalArgumentException if n or trials is not positive, or pool is null
+     */
+    public PercolationStats(int n, int trials, long seed, ForkJoinPool pool) {
+        this(n, trials, seed, pool, TrialMode.PERMUTATION);
+    }
+
+    /**
+     * Performs independent trials on an n-by-n grid concurrently on a given fork-join pool.
+     * Every trial draws its sites from its own random stream split from a root stream
+     * seeded with seed, so mean() and stddev() depend on seed only,
+     * no matter how many threads the pool has
+     * @param n the length of the side of the grid
+     * @param trials the number of trials
+     * @param seed the seed of the random streams
+     * @param pool the fork-join pool running the trials
+     * @param mode the order in which each trial opens its sites
+     * @throws IllegalArgumentException if n or trials is not positive, or pool or mode is null
+     */
+    public PercolationStats(int n, int trials, long seed, ForkJoinPool pool, TrialMode mode) {
+        this(n, trials, RandomSource.splittable(seed), pool, mode);
+    }
+
+    /**
+     * Performs independent trials on an n-by-n grid concurrently on a given fork-join pool.
+     * Every trial draws its sites from its own source split from the given one in trial order,
+     * so mean() and stddev() depend on the generator and its seed only,
+     * no matter how many threads the pool has
+     * @param n the length of the side of the grid
+     * @param trials the number of trials
+     * @param random the source the sources of the trials are split from
+     * @param pool the fork-join pool running the trials
+     * @param mode the order in which each trial opens its sites
+     * @throws IllegalArgumentException if n or trials is not positive, or random, pool or mode is null
+     */
+    public PercolationStats(int n, int trials, RandomSource random, ForkJoinPool pool, TrialMode mode) {
+        // validates arguments
+        if (n <= 0 || trials <= 0) throw new IllegalArgumentException("Both n and trials should be >0");
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+        if (pool == null) throw new IllegalArgumentException("Pool should not be null");
+        if (mode == null) throw new IllegalArgumentException("Mode should not be null");
+
+        // initialise instance variables
+        thresholds = new double[trials];
+        this.numCount = trials;
+
+        // splits one stream per trial in trial order,
+        // so that a trial sees the same stream whichever worker runs it
+        RandomSource[] streams = new RandomSource[trials];
+        for (int i = 0; i < trials; i++) {
+            streams[i] = random.split();
+        }
+
+        // a few tasks per worker keeps the workers busy without splitting down to single trials
+        int grain = Math.max(1, trials / (4 * pool.getParallelism()));
+        pool.invoke(new TrialTask(n, mode, new Scratch(n), streams, thresholds, 0, trials, grain));
+    }
+
+    /**
+     * Performs trials on an n-by-n grid concurrently on a given fork-join pool
+     * until the 95% confidence interval is at most a target width, or a time budget runs out.
+     * Trials run in batches, and their thresholds are folded into a running mean and variance
+     * (Welford's method) in trial order, stopping at the first trial that makes the interval tight enough.
+     * The first batch runs one trial per worker (and at least two trials), then each batch is sized
+     * from the measured time of the last one to fit the time left, and none starts once a round of trials
+     * no longer fits, so the budget is only overrun by the first batch or when trials run slower than measured.
+     * Trial i sees the same stream as in the fixed-count constructors, so for a given seed the run stops
+     * after the same trial, with the same results, whatever the number of threads,
+     * unless the budget cuts it short. The width is only trusted from the 30th trial on
+     * @param n the length of the side of the grid
+     * @param width the target width of the 95% confidence interval
+     * @param budgetMillis the time budget in milliseconds
+     * @param seed the seed of the random streams
+     * @param pool the fork-join pool running the trials
+     * @param mode the order in which each trial opens its sites
+     * @throws IllegalArgumentException if n, width or budgetMillis is not positive, or pool or mode is null
+     */
+    public PercolationStats(int n, double width, long budgetMillis, long seed, ForkJoinPool pool, TrialMode mode) {
+        this(n, width, budgetMillis, RandomSource.splittable(seed), pool, mode);
+    }
+
+    /**
+     * Performs trials on an n-by-n grid concurrently on a given fork-join pool
+     * until the 95% confidence interval is at most a target width, or a time budget runs out,
+     * as the seeded adaptive constructor does, splitting the sources of the trials from a given source
+     * @param n the length of the side of the grid
+     * @param width the target width of the 95% confidence interval
+     * @param budgetMillis the time budget in milliseconds
+     * @param random the source the sources of the trials are split from
+     * @param pool the fork-join pool running the trials
+     * @param mode the order in which each trial opens its sites
+     * @throws IllegalArgumentException if n, width or budgetMillis is not positive,
+     *                                  or random, pool or mode is null
+     */
+    public PercolationStats(int n, double width, long budgetMillis, RandomSource random, ForkJoinPool pool,
+                            TrialMode mode) {
+        // validates arguments
+        if (n <= 0 || !(width > 0) || budgetMillis <= 0) {
+            throw new IllegalArgumentException("n, width and budgetMillis should be >0");
+        }
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+        if (pool == null) throw new IllegalArgumentException("Pool should not be null");
+        if (mode == null) throw new IllegalArgumentException("Mode should not be null");
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        Scratch scratch = new Scratch(n);
+
+        // one trial per worker in the first batch, and at most a few per worker in the later ones
+        int workers = pool.getParallelism();
+        int maxBatch = Math.max(MIN_TRIALS, 4 * workers);
+        int batch = Math.max(MIN_TRIALS, workers);
+        double[] samples = new double[maxBatch];
+        RandomSource[] streams = new RandomSource[maxBatch];
+
+        // Welford's running mean and sum of squared deviations of the folded trials
+        int count = 0;
+        double mean = 0.0;
+        double m2 = 0.0;
 
-            // open sites until percolates
-            while (!perc.percolates()) {
-                int row = StdRandom.uniform(1, n+1);
-                int col = StdRandom.uniform(1, n+1);
-                perc.open(row, col);
+        boolean done = false;
+        while (true) {
+            // doubles the arrays if the next batch does not fit
+            int end = count + batch;
+            if (end > samples.length) {
+                samples = Arrays.copyOf(samples, Math.max(2 * samples.length, end));
+                streams = Arrays.copyOf(streams, samples.length);
             }
 
-            // records the number of open site when percolates
-            thresholds[i] = perc.numberOfOpenSites()/((double) n * n);
+            // splits the streams in trial order and runs the batch
+            for (int i = count; i < end; i++) {
+                streams[i] = random.split();
+            }
+            long start = System.nanoTime();
+            pool.invoke(new TrialTask(n, mode, scratch, streams, samples, count, end, 1));
+            long batchNanos = System.nanoTime() - start;
+
+            // folds the batch in trial order, the trials past the stopping point are dropped
+            while (count < end && !done) {
+                double x = samples[count++];
+                double delta = x - mean;
+                mean += delta / count;
+                m2 += delta * (x - mean);
+
+                double halfWidth = 1.96 * Math.sqrt(m2 / (count - 1)) / Math.sqrt(count);
+                if (count >= MIN_STOPPING_TRIALS && 2 * halfWidth <= width) done = true;
+            }
+
+            if (done) break;
+
+            // sizes the next batch to the rounds of one trial per worker that fit the time left,
+            // stopping if not even one does
+            int rounds = (batch + workers - 1) / workers;
+            long roundNanos = Math.max(1, batchNanos / rounds);
+            long roundsLeft = (deadline - System.nanoTime()) / roundNanos;
+            if (count >= MIN_TRIALS && roundsLeft <= 0) break;
+            batch = (int) Math.max(1, Math.min(maxBatch, roundsLeft * workers));
+        }
+
+        // initialise instance variables
+        thresholds = Arrays.copyOf(samples, count);
+        this.numCount = count;
+    }
+
+    /**
+     * Runs a single trial, opening random sites until the system percolates
+     * @param n the length of the side of the grid
+     * @param random the random stream of the trial
+     * @param perc an all-blocked n-by-n grid
+     * @return the fraction of open sites when the system percolates
+     */
+    private static double uniformTrial(int n, RandomSource random, Percolation perc) {
+        // open sites until percolates
+        while (!perc.percolates()) {
+            int row = random.nextInt(1, n+1);
+            int col = random.nextInt(1, n+1);
+            perc.open(row, col);
+        }
+
+        return perc.numberOfOpenSites()/((double) n * n);
+    }
+
+    /**
+     * Runs a single trial, opening the sites in a random permutation until the system percolates.
+     * The permutation is drawn one step of a Fisher-Yates shuffle at a time,
+     * so only the sites opened before percolation cost a random number
+     * @param n the length of the side of the grid
+     * @param random the random stream of the trial
+     * @param order a reusable array of n^2 entries, reshuffled in place
+     * @param perc an all-blocked n-by-n grid
+     * @return the fraction of open sites when the system percolates
+     */
+    private static double permutationTrial(int n, RandomSource random, int[] order, Percolation perc) {
+        int sites = n*n;
+
+        // restores the identity, so that the permutation only depends on the stream of this trial
+        for (int i = 0; i < sites; i++) {
+            order[i] = i;
+        }
+
+        // open sites until percolates, swapping the next site into position k
+        for (int k = 0; !perc.percolates(); k++) {
+            int j = random.nextInt(k, sites);
+            int site = order[j];
+            order[j] = order[k];
+            order[k] = site;
+            perc.open(site / n + 1, site % n + 1);
+        }
+
+        return perc.numberOfOpenSites()/((double) n * n);
+    }
+
+    /**
+     * The reusable state of the trials of a run, pooled so that the workers keep reusing
+     * the same grids, permutation arrays and sweep engines across tasks and batches
+     */
+    private static class Scratch {
+
+        private final int n; // the length of the side of the grid
+        private final PercolationPool grids; // the idle grids
+        private final ConcurrentLinkedQueue<int[]> orders = new ConcurrentLinkedQueue<>(); // the idle permutation arrays
+        private final ConcurrentLinkedQueue<PercolationSweep> sweeps = new ConcurrentLinkedQueue<>(); // the idle sweep engines
+
+        Scratch(int n) {
+            this.n = n;
+            this.grids = new PercolationPool(n);
+        }
+
+        int[] acquireOrder() {
+            int[] order = this.orders.poll();
+            return order != null ? order : new int[this.n * this.n];
+        }
+
+        PercolationSweep acquireSweep() {
+            PercolationSweep sweep = this.sweeps.poll();
+            return sweep != null ? sweep : new PercolationSweep(this.n);
+        }
+    }
+
+    /**
+     * A fork-join task running the trials in [lo, hi),
+     * each writing its threshold into its own slot
+     */
+    private static class TrialTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int n; // the length of the side of the grid
+        private final TrialMode mode; // the order in which each trial opens its sites
+        private final Scratch scratch; // the reusable state shared by the tasks, about one per running worker
+        private final RandomSource[] streams; // the random stream of each trial
+        private final double[] thresholds; // the threshold of each trial
+        private final int lo; // the first trial of the task
+        private final int hi; // one past the last trial of the task
+        private final int grain; // the number of trials below which the task runs sequentially
+
+        TrialTask(int n, TrialMode mode, Scratch scratch, RandomSource[] streams, double[] thresholds,
+                  int lo, int hi, int grain) {
+            this.n = n;
+            this.mode = mode;
+            this.scratch = scratch;
+            this.streams = streams;
+            this.thresholds = thresholds;
+            this.lo = lo;
+            this.hi = hi;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.hi - this.lo <= this.grain) {
+                if (this.mode == TrialMode.SWEEP) {
+                    // borrows one sweep engine for all the trials of this task
+                    PercolationSweep sweep = this.scratch.acquireSweep();
+                    for (int i = this.lo; i < this.hi; i++) {
+                        this.thresholds[i] = sweep.sweep(this.streams[i])/((double) this.n * this.n);
+                    }
+                    this.scratch.sweeps.offer(sweep);
+                    return;
+                }
+
+                // borrows one grid and one permutation array for all the trials of this task,
+                // the grid being reset between trials
+                Percolation perc = this.scratch.grids.acquire();
+                int[] order = this.mode == TrialMode.PERMUTATION ? this.scratch.acquireOrder() : null;
+                try {
+                    for (int i = this.lo; i < this.hi; i++) {
+                        perc.reset();
+                        if (this.mode == TrialMode.PERMUTATION) {
+                            this.thresholds[i] = permutationTrial(this.n, this.streams[i], order, perc);
+                        } else {
+                            this.thresholds[i] = uniformTrial(this.n, this.streams[i], perc);
+                        }
+                    }
+                } finally {
+                    this.scratch.grids.release(perc);
+                    if (order != null) this.scratch.orders.offer(order);
+                }
+                return;
+            }
+
+            int mid = (this.lo + this.hi) >>> 1;
+            invokeAll(new TrialTask(this.n, this.mode, this.scratch, this.streams, this.thresholds, this.lo, mid, this.grain),
+                      new TrialTask(this.n, this.mode, this.scratch, this.streams, this.thresholds, mid, this.hi, this.grain));
         }
     }
 
@@ -60,9 +403,44 @@ public class PercolationStats {
     // test client (see below)
     public static void main(String[] args) {
         int n = Integer.parseInt(args[0]);
-        int numTrial = Integer.parseInt(args[1]);
 
-        PercolationStats experiment = new PercolationStats(n, numTrial);
+        // a second argument that is not an integer, such as 0.001 or 1e-3, is the target width
+        // of the confidence interval instead of the number of trials,
+        // with an optional time budget in milliseconds as the sixth
+        int trials = 0;
+        double width = 0.0;
+        boolean adaptive = false;
+        try {
+            trials = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            width = Double.parseDouble(args[1]);
+            adaptive = true;
+        }
+
+        // runs the trials in parallel when a seed (and optionally a number of threads and a mode) is given,
+        // with the generator named by -Dpercolation.random=splittable|xoshiro256**
+        PercolationStats experiment;
+        if (args.length < 3 && !adaptive) {
+            experiment = new PercolationStats(n, trials);
+        } else {
+            long seed = args.length < 3 ? System.nanoTime() : Long.parseLong(args[2]);
+            int threads = args.length < 4 ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(args[3]);
+            TrialMode mode = args.length < 5 ? TrialMode.PERMUTATION : TrialMode.valueOf(args[4].toUpperCase());
+            RandomSource random = RandomSource.named(System.getProperty("percolation.random", "splittable"), seed);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                if (adaptive) {
+                    long budget = args.length < 6 ? 60000 : Long.parseLong(args[5]);
+                    experiment = new PercolationStats(n, width, budget, random, pool, mode);
+                } else {
+                    experiment = new PercolationStats(n, trials, random, pool, mode);
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        StdOut.printf("trials                  = %d\n", experiment.numCount);
         StdOut.printf("mean                    = %f\n", experiment.mean());
         StdOut.printf("stddev                  = %f\n", experiment.stddev());
         StdOut.printf("95%% confidence interval = [%f, %f]\n", experiment.confidenceLo(), experiment.confidenceHi());
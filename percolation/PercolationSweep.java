@@ -0,0 +1,254 @@
+import edu.princeton.cs.algs4.StdOut;
+
+/**
+ * A Newman-Ziff sweep over an n-by-n grid: each sweep opens the sites in a random order
+ * on a single union-find and records the exact number of open sites at which the system
+ * first percolates. Over many sweeps, these records give the whole spanning curve R(k),
+ * the probability that a grid with k open sites percolates, at the cost of one trial per sweep
+ */
+public class PercolationSweep {
+
+    // The length of the side (size) of the grid
+    private final int n;
+
+    // The number of sites in the grid, n^2
+    private final int sites;
+
+    // The union-find over the sites, flagging the trees that touch the top or the bottom row
+    private final GridUnionFind grid;
+
+    // The open status of the sites
+    private final boolean[] openStatus;
+
+    // The opening order of the sites, reshuffled in place for every sweep
+    private final int[] order;
+
+    // percolatedAt[k - lowest] is the number of sweeps that first percolated with k open sites,
+    // for k in a window grown to cover the sweeps so far, which is a narrow band around the threshold,
+    // so that an engine does not hold a count for each of the n^2 + 1 possible values
+    private long[] percolatedAt = new long[0];
+
+    // The number of open sites counted by percolatedAt[0]
+    private int lowest = 0;
+
+    // The number of sweeps so far
+    private int sweeps = 0;
+
+    /**
+     * Creates a sweep engine over an n-by-n grid
+     * @param n the length of the side of the grid
+     * @throws IllegalArgumentException if n is not positive
+     */
+    public PercolationSweep(int n) {
+        // validates argument n
+        if (n <= 0) {
+            String msg = String.format("n should be > 0, but %d found", n);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // initialises the instance variables
+        this.n = n;
+        this.sites = n*n;
+        this.grid = new GridUnionFind(this.sites);
+        this.openStatus = new boolean[this.sites];
+        this.order = new int[this.sites];
+    }
+
+    /**
+     * Runs one sweep, opening sites in a random order until the system percolates,
+     * and records the number of open sites at that moment
+     * @param random the random stream of the sweep
+     * @return the number of open sites when the system first percolates
+     * @throws IllegalArgumentException if random is null
+     */
+    public int sweep(RandomSource random) {
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+
+        // restores the identity, so that the order only depends on the stream of this sweep
+        for (int i = 0; i < this.sites; i++) {
+            this.order[i] = i;
+        }
+
+        // opens the next site of a Fisher-Yates shuffle until a tree touches top and bottom
+        int k = 0;
+        boolean percolated = false;
+        while (!percolated) {
+            int j = random.nextInt(k, this.sites);
+            int site = this.order[j];
+            this.order[j] = this.order[k];
+            this.order[k++] = site;
+            percolated = this.open(site) == (GridUnionFind.TOP | GridUnionFind.BOTTOM);
+        }
+
+        // records the moment of percolation and blocks the opened sites again
+        this.record(k);
+        this.sweeps++;
+        this.clear(k);
+
+        return k;
+    }
+
+    /**
+     * Returns the number of sweeps so far
+     * @return the number of sweeps so far
+     */
+    public int sweeps() {
+        return this.sweeps;
+    }
+
+    /**
+     * Returns the fraction of sweeps that percolated with at most a number of open sites,
+     * an estimate of the probability that a grid with that many open sites percolates.
+     * Not to be confused with spanningProbability(p), which takes the probability that a site is open
+     * @param openSites the number of open sites
+     * @return the estimated spanning probability R(k) at k = openSites
+     * @throws IllegalArgumentException if openSites is outside [0, n^2]
+     */
+    public double spanningProbabilityAt(int openSites) {
+        if (openSites < 0 || openSites > this.sites) {
+            String msg = String.format("openSites should be between 0 and %d, but %d is found", this.sites, openSites);
+            throw new IllegalArgumentException(msg);
+        }
+        if (this.sweeps == 0) return 0.0;
+
+        long percolated = 0;
+        for (int i = 0; i < this.percolatedAt.length && this.lowest + i <= openSites; i++) {
+            percolated += this.percolatedAt[i];
+        }
+        return percolated / (double) this.sweeps;
+    }
+
+    /**
+     * Returns the estimated spanning curve, with entry k being R(k) for k in [0, n^2]
+     * @return the estimated spanning curve
+     */
+    public double[] spanningCurve() {
+        double[] curve = new double[this.sites + 1];
+        if (this.sweeps == 0) return curve;
+
+        long percolated = 0;
+        for (int k = 0; k <= this.sites; k++) {
+            percolated += this.percolatedAt(k);
+            curve[k] = percolated / (double) this.sweeps;
+        }
+        return curve;
+    }
+
+    /**
+     * Returns the estimated probability that a grid, whose sites are each open with probability p,
+     * percolates. This convolves R(k) with the binomial distribution of the number of open sites.
+     * Not to be confused with spanningProbabilityAt(k), which takes a number of open sites
+     * @param p the probability that a site is open
+     * @return the estimated spanning probability R(p)
+     * @throws IllegalArgumentException if p is outside [0, 1]
+     */
+    public double spanningProbability(double p) {
+        if (!(p >= 0.0 && p <= 1.0)) {
+            String msg = String.format("p should be between 0 and 1, but %f is found", p);
+            throw new IllegalArgumentException(msg);
+        }
+        if (p == 0.0) return this.spanningProbabilityAt(0);
+        if (p == 1.0) return this.spanningProbabilityAt(this.sites);
+
+        // accumulates log C(N, k) p^k (1-p)^(N-k) term by term to stay clear of underflow
+        double logP = Math.log(p);
+        double logQ = Math.log1p(-p);
+        double logBinomial = this.sites * logQ;
+        double result = 0.0;
+        long percolated = 0;
+        for (int k = 0; k <= this.sites; k++) {
+            if (k > 0) logBinomial += Math.log((this.sites - k + 1) / (double) k) + logP - logQ;
+            percolated += this.percolatedAt(k);
+            if (percolated > 0) result += Math.exp(logBinomial) * percolated;
+        }
+        return this.sweeps == 0 ? 0.0 : result / this.sweeps;
+    }
+
+    /**
+     * Returns the number of sweeps that first percolated with k open sites
+     * @param k the number of open sites in [0, n^2]
+     * @return the number of sweeps, 0 outside the window of percolatedAt
+     */
+    private long percolatedAt(int k) {
+        int i = k - this.lowest;
+        return i >= 0 && i < this.percolatedAt.length ? this.percolatedAt[i] : 0;
+    }
+
+    /**
+     * Counts a sweep that first percolated with k open sites, growing the window of percolatedAt to cover k.
+     * The window grows by at least its length, so that growing costs amortised constant time per sweep
+     * @param k the number of open sites in [0, n^2]
+     */
+    private void record(int k) {
+        int length = this.percolatedAt.length;
+        if (length == 0) {
+            this.percolatedAt = new long[1];
+            this.lowest = k;
+        } else if (k < this.lowest || k >= this.lowest + length) {
+            int lo = Math.min(this.lowest, k);
+            int hi = Math.max(this.lowest + length, k + 1);
+            if (k < this.lowest) lo = Math.max(0, Math.min(lo, hi - 2*length));
+            else hi = Math.min(this.sites + 1, Math.max(hi, lo + 2*length));
+
+            long[] temp = new long[hi - lo];
+            System.arraycopy(this.percolatedAt, 0, temp, this.lowest - lo, length);
+            this.percolatedAt = temp;
+            this.lowest = lo;
+        }
+        this.percolatedAt[k - this.lowest]++;
+    }
+
+    /**
+     * Opens a site and connects it to its open neighbours
+     * @param site the index of the site in [0, n^2)
+     * @return the flags of the tree of the site after opening
+     */
+    private int open(int site) {
+        this.openStatus[site] = true;
+
+        int row = site / this.n;
+        int col = site % this.n;
+
+        int flags = 0;
+        if (row == 0) flags |= GridUnionFind.TOP;
+        if (row == this.n - 1) flags |= GridUnionFind.BOTTOM;
+        if (flags != 0) this.grid.mark(site, flags);
+
+        if (col < this.n - 1 && this.openStatus[site + 1]) flags = this.grid.union(site, site + 1);
+        if (col > 0 && this.openStatus[site - 1]) flags = this.grid.union(site, site - 1);
+        if (row > 0 && this.openStatus[site - this.n]) flags = this.grid.union(site, site - this.n);
+        if (row < this.n - 1 && this.openStatus[site + this.n]) flags = this.grid.union(site, site + this.n);
+
+        return flags;
+    }
+
+    /**
+     * Blocks the first k sites of the order again,
+     * touching only the entries the sweep has written
+     * @param k the number of sites opened by the sweep
+     */
+    private void clear(int k) {
+        for (int i = 0; i < k; i++) {
+            int site = this.order[i];
+            this.openStatus[site] = false;
+            this.grid.reset(site);
+        }
+    }
+
+    // test client
+    public static void main(String[] args) {
+        int n = Integer.parseInt(args[0]);
+        int sweeps = Integer.parseInt(args[1]);
+        long seed = args.length < 3 ? 0L : Long.parseLong(args[2]);
+
+        PercolationSweep sweep = new PercolationSweep(n);
+        RandomSource random = RandomSource.named(System.getProperty("percolation.random", "splittable"), seed);
+        for (int i = 0; i < sweeps; i++) {
+            sweep.sweep(random.split());
+        }
+
+        for (double p = 0.50; p <= 0.70 + 1e-9; p += 0.02) {
+            StdOut.printf("R(%.2f) = %f\n", p, sweep.spanningProbability(p));
+        }
+    }
+}
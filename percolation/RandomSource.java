@@ -0,0 +1,249 @@
+import edu.princeton.cs.algs4.StdRandom;
+
+import java.util.SplittableRandom;
+
+/**
+ * A source of uniform random numbers, taken at construction by the randomized classes
+ * instead of calling the global StdRandom, so that the generator can be swapped for a faster one
+ * and a run replayed exactly from its seed.
+ * A source is not thread-safe: each thread or task works on its own, derived by split(),
+ * which is deterministic given the state of the parent
+ */
+public interface RandomSource {
+
+    /**
+     * Returns a uniform random long
+     * @return a uniform random long
+     */
+    long nextLong();
+
+    /**
+     * Returns a uniform random int in [0, bound), by Lemire's multiply-and-reject method
+     * @param bound the upper bound (exclusive)
+     * @return a uniform random int in [0, bound)
+     * @throws IllegalArgumentException if bound is not positive
+     */
+    default int nextInt(int bound) {
+        if (bound <= 0) {
+            String msg = String.format("bound should be > 0, but %d found", bound);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // the high half of a 32-bit variate times bound, rejecting the few low halves that would bias it
+        long m = (this.nextLong() >>> 32) * bound;
+        if ((m & 0xffffffffL) < bound) {
+            long threshold = (1L << 32) % bound;
+            while ((m & 0xffffffffL) < threshold) {
+                m = (this.nextLong() >>> 32) * bound;
+            }
+        }
+        return (int) (m >>> 32);
+    }
+
+    /**
+     * Returns a uniform random int in [origin, bound)
+     * @param origin the lower bound (inclusive)
+     * @param bound the upper bound (exclusive)
+     * @return a uniform random int in [origin, bound)
+     * @throws IllegalArgumentException if origin is not below bound
+     */
+    default int nextInt(int origin, int bound) {
+        if (origin >= bound) {
+            String msg = String.format("origin should be < bound, but %d and %d found", origin, bound);
+            throw new IllegalArgumentException(msg);
+        }
+
+        int range = bound - origin;
+        if (range > 0) return origin + this.nextInt(range);
+
+        // the range overflows an int, so draws until inside
+        int x;
+        do {
+            x = (int) this.nextLong();
+        } while (x < origin || x >= bound);
+        return x;
+    }
+
+    /**
+     * Returns a uniform random double in [0, 1)
+     * @return a uniform random double in [0, 1)
+     */
+    default double nextDouble() {
+        return (this.nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Returns a new source, statistically independent of this one, advancing this one
+     * @return a new source
+     */
+    RandomSource split();
+
+    /**
+     * Returns a source backed by java.util.SplittableRandom
+     * @param seed the seed
+     * @return a source backed by java.util.SplittableRandom
+     */
+    static RandomSource splittable(long seed) {
+        return new Splittable(new SplittableRandom(seed));
+    }
+
+    /**
+     * Returns a xoshiro256** source
+     * @param seed the seed
+     * @return a xoshiro256** source
+     */
+    static RandomSource xoshiro256StarStar(long seed) {
+        return new Xoshiro256StarStar(seed);
+    }
+
+    /**
+     * Returns the source backed by the global StdRandom, reproducible through StdRandom.setSeed()
+     * @return the source backed by StdRandom
+     */
+    static RandomSource stdRandom() {
+        return StdRandomSource.INSTANCE;
+    }
+
+    /**
+     * Returns a source by the name of its generator
+     * @param name "splittable" or "xoshiro256**"
+     * @param seed the seed
+     * @return a source of the named generator
+     * @throws IllegalArgumentException if the name is unknown
+     */
+    static RandomSource named(String name, long seed) {
+        switch (name.toLowerCase()) {
+            case "splittable":
+                return splittable(seed);
+            case "xoshiro256**":
+            case "xoshiro":
+                return xoshiro256StarStar(seed);
+            default:
+                String msg = String.format("name should be splittable or xoshiro256**, but %s found", name);
+                throw new IllegalArgumentException(msg);
+        }
+    }
+
+    /**
+     * A source delegating to java.util.SplittableRandom, giving the same numbers for the same seed
+     */
+    final class Splittable implements RandomSource {
+
+        // The generator
+        private final SplittableRandom random;
+
+        private Splittable(SplittableRandom random) {
+            this.random = random;
+        }
+
+        @Override
+        public long nextLong() {
+            return this.random.nextLong();
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return this.random.nextInt(bound);
+        }
+
+        @Override
+        public int nextInt(int origin, int bound) {
+            return this.random.nextInt(origin, bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return this.random.nextDouble();
+        }
+
+        @Override
+        public RandomSource split() {
+            return new Splittable(this.random.split());
+        }
+    }
+
+    /**
+     * Blackman and Vigna's xoshiro256**, a fast generator with 256 bits of state.
+     * The state is seeded through SplitMix64, and split() seeds the new source the same way
+     * from a number drawn from this one
+     */
+    final class Xoshiro256StarStar implements RandomSource {
+
+        // The state, never all zero
+        private long s0, s1, s2, s3;
+
+        private Xoshiro256StarStar(long seed) {
+            // expands the seed by SplitMix64, whose outputs are never all zero
+            long x = seed;
+            this.s0 = mix64(x += 0x9e3779b97f4a7c15L);
+            this.s1 = mix64(x += 0x9e3779b97f4a7c15L);
+            this.s2 = mix64(x += 0x9e3779b97f4a7c15L);
+            this.s3 = mix64(x + 0x9e3779b97f4a7c15L);
+        }
+
+        /**
+         * The output function of SplitMix64
+         * @param z a 64-bit value
+         * @return the mixed value
+         */
+        private static long mix64(long z) {
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            return z ^ (z >>> 31);
+        }
+
+        @Override
+        public long nextLong() {
+            long result = Long.rotateLeft(this.s1 * 5, 7) * 9;
+            long t = this.s1 << 17;
+            this.s2 ^= this.s0;
+            this.s3 ^= this.s1;
+            this.s1 ^= this.s2;
+            this.s0 ^= this.s3;
+            this.s2 ^= t;
+            this.s3 = Long.rotateLeft(this.s3, 45);
+            return result;
+        }
+
+        @Override
+        public RandomSource split() {
+            return new Xoshiro256StarStar(this.nextLong());
+        }
+    }
+
+    /**
+     * The source backed by the global StdRandom
+     */
+    final class StdRandomSource implements RandomSource {
+
+        // The only instance, as StdRandom is global
+        private static final StdRandomSource INSTANCE = new StdRandomSource();
+
+        private StdRandomSource() { }
+
+        @Override
+        public long nextLong() {
+            return StdRandom.uniform(Long.MAX_VALUE) | ((long) StdRandom.uniform(2) << 63);
+        }
+
+        @Override
+        public int nextInt(int bound) {
+            return StdRandom.uniform(bound);
+        }
+
+        @Override
+        public int nextInt(int origin, int bound) {
+            return StdRandom.uniform(origin, bound);
+        }
+
+        @Override
+        public double nextDouble() {
+            return StdRandom.uniform();
+        }
+
+        @Override
+        public RandomSource split() {
+            return new Splittable(new SplittableRandom(this.nextLong()));
+        }
+    }
+}
@@ -0,0 +1,311 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A thread-safe randomized queue, for many threads enqueuing and dequeuing at once.
+ * Items are spread over shards, each a resizing array like RandomizedQueue with its own lock
+ * and its own RandomSource, so threads working on different shards never contend.
+ * Shards are picked by a RandomSource of the calling thread, split from the source of the queue
+ * the first time the thread picks one, so a seeded queue used by a single thread replays exactly;
+ * with many threads, each thread's stream depends on the order in which the threads first use the queue.
+ * enqueue() adds to a shard picked at random;
+ * dequeue() and sample() pick a random non-empty shard, then an item uniformly within the shard.
+ * A shard is picked by probing shards at random, reading their sizes without locking or allocating,
+ * and only when as many probes as shards all miss, as when most shards are empty,
+ * by counting the non-empty shards and taking one of them at random.
+ * Uniformity: with no other operation in progress, every non-empty shard is picked with the same probability,
+ * so an item is picked with probability 1 / (number of non-empty shards * size of its shard).
+ * That is 1/n only when the non-empty shards hold as many items each; enqueue() spreads the items
+ * uniformly at random, so the shard sizes stay close as the queue grows, but are rarely equal.
+ * Under concurrency each operation is atomic on its shard, and every item is dequeued exactly once,
+ * but as the sizes are read without locking, the choice of a shard is only approximately uniform
+ * while other threads change the shards; a shard found empty under its lock is simply drawn again.
+ * size() and isEmpty() are likewise exact only when no other operation is in progress
+ * @param <Item> a generic type
+ */
+public class ConcurrentRandomizedQueue<Item> {
+
+    /**
+     * A shard of the queue, guarded by its own monitor
+     */
+    private static final class Shard {
+        private Object[] arr = new Object[1]; // a resizing array of items
+        private volatile int n; // the number of items, written under the monitor, read without it
+        private final RandomSource random; // the source picking items, used under the monitor
+
+        private Shard(RandomSource random) {
+            this.random = random;
+        }
+
+        /**
+         * Resize the item array to a given capacity
+         * @param capacity capacity of the array after resizing
+         */
+        private void resizing(int capacity) {
+            Object[] temp = new Object[capacity];
+            System.arraycopy(this.arr, 0, temp, 0, this.n);
+            this.arr = temp;
+        }
+    }
+
+    // The shards of the queue
+    private final Shard[] shards;
+
+    // The source the sources of the shards and of the threads are split from, locked while splitting
+    private final RandomSource random;
+
+    // The source picking shards for each thread, split from random on the first pick of the thread
+    private final ThreadLocal<RandomSource> pickers;
+
+    /**
+     * Construct an empty randomized queue with two shards per core
+     */
+    public ConcurrentRandomizedQueue() {
+        this(2 * Runtime.getRuntime().availableProcessors(), new SplittableRandom().nextLong());
+    }
+
+    /**
+     * Construct an empty randomized queue
+     * @param shards the number of shards
+     * @param seed the seed of the generators of the shards
+     * @throws IllegalArgumentException if shards is not positive
+     */
+    public ConcurrentRandomizedQueue(int shards, long seed) {
+        this(shards, RandomSource.splittable(seed));
+    }
+
+    /**
+     * Construct an empty randomized queue
+     * @param shards the number of shards
+     * @param random the source the sources of the shards and of the threads are split from
+     * @throws IllegalArgumentException if shards is not positive or random is null
+     */
+    public ConcurrentRandomizedQueue(int shards, RandomSource random) {
+        // validates arguments
+        if (shards <= 0) {
+            String msg = String.format("shards should be > 0, but %d found", shards);
+            throw new IllegalArgumentException(msg);
+        }
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+
+        // initialises the instance variables
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard(random.split());
+        }
+        this.random = random;
+        this.pickers = ThreadLocal.withInitial(() -> {
+            synchronized (this.random) {
+                return this.random.split();
+            }
+        });
+    }
+
+    /**
+     * Is the randomized queue empty?
+     * @return true if empty, vice versa
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Return the number of items on the randomized queue
+     * @return the number of items on the randomized queue
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : this.shards) {
+            size += shard.n;
+        }
+        return size;
+    }
+
+    /**
+     * Add the item to the randomized queue. Safe to call from many threads at once
+     * @param item an item of the generic type
+     * @throws IllegalArgumentException if item is null
+     */
+    public void enqueue(Item item) {
+        // validate input
+        if (item == null) throw new IllegalArgumentException("Item should not be null");
+
+        Shard shard = this.shards[this.pickers.get().nextInt(this.shards.length)];
+        synchronized (shard) {
+            // double the array if full
+            if (shard.n == shard.arr.length) shard.resizing(2*shard.arr.length);
+            shard.arr[shard.n] = item;
+            shard.n++;
+        }
+    }
+
+    /**
+     * Remove and return a random item. Safe to call from many threads at once
+     * @return a random item
+     * @throws NoSuchElementException if the RQ is empty
+     */
+    public Item dequeue() {
+        while (true) {
+            Shard shard = this.pickShard();
+            synchronized (shard) {
+                // emptied meanwhile, draws again
+                if (shard.n == 0) continue;
+
+                int index = shard.random.nextInt(shard.n);
+                Item item = (Item) shard.arr[index];
+
+                // swap the retrieved entry with the last entry, and avoid loitering
+                int last = shard.n - 1;
+                shard.arr[index] = shard.arr[last];
+                shard.arr[last] = null;
+                shard.n = last;
+
+                // half the array if n = 1/4 array length and the array is not empty
+                if (last > 0 && shard.arr.length / 4 == last) shard.resizing(shard.arr.length / 2);
+
+                return item;
+            }
+        }
+    }
+
+    /**
+     * Return a random item (but do not remove it). Safe to call from many threads at once
+     * @return a random item
+     * @throws NoSuchElementException if the RQ is empty
+     */
+    public Item sample() {
+        while (true) {
+            Shard shard = this.pickShard();
+            synchronized (shard) {
+                // emptied meanwhile, draws again
+                if (shard.n == 0) continue;
+
+                return (Item) shard.arr[shard.random.nextInt(shard.n)];
+            }
+        }
+    }
+
+    /**
+     * Pick a random non-empty shard, reading the sizes without locking
+     * @return a shard, maybe emptied since its size was read
+     * @throws NoSuchElementException if every shard was found empty
+     */
+    private Shard pickShard() {
+        RandomSource random = this.pickers.get();
+        int count = this.shards.length;
+
+        // probes shards at random, which takes a probe or two unless most shards are empty
+        for (int probe = 0; probe < count; probe++) {
+            Shard shard = this.shards[random.nextInt(count)];
+            if (shard.n != 0) return shard;
+        }
+
+        // counts the non-empty shards and takes one at random, drawing again if it was emptied meanwhile
+        while (true) {
+            int nonEmpty = 0;
+            for (Shard shard : this.shards) {
+                if (shard.n != 0) nonEmpty++;
+            }
+            if (nonEmpty == 0) throw new NoSuchElementException("Randomized queue underflow");
+
+            int target = random.nextInt(nonEmpty);
+            for (Shard shard : this.shards) {
+                if (shard.n != 0 && target-- == 0) return shard;
+            }
+        }
+    }
+
+    // unit testing, followed by a stress test with producer and consumer threads
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length < 1 ? 1_000_000 : Integer.parseInt(args[0]);
+        int threads = args.length < 2 ? Math.max(2, Runtime.getRuntime().availableProcessors()) : Integer.parseInt(args[1]);
+
+        StdOut.println("Testing dequeue() order over 100000 single-shard queues of 0 to 4");
+        int[] firsts = new int[5];
+        for (int t = 0; t < 100_000; t++) {
+            ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(1, t);
+            for (int i = 0; i < 5; i++)
+                queue.enqueue(i);
+            firsts[queue.dequeue()]++;
+        }
+        for (int first : firsts)
+            StdOut.printf("%.3f ", first / 100_000.0);
+        StdOut.println("\nExpecting about 0.2 for every item");
+
+        StdOut.println("\nTesting dequeue() over 100000 queues of one item in each of 4 shards");
+        int[] picks = new int[4];
+        for (int t = 0; t < 100_000; t++) {
+            ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>(4, t);
+            // places item i in shard i directly, as enqueue() picks its shard at random
+            for (int i = 0; i < 4; i++)
+                queue.shards[i].arr[queue.shards[i].n++] = i;
+            picks[queue.dequeue()]++;
+        }
+        for (int pick : picks)
+            StdOut.printf("%.3f ", pick / 100_000.0);
+        StdOut.println("\nExpecting about 0.25 for every shard");
+
+        StdOut.println("\nTesting replay of a seeded queue by a single thread");
+        ConcurrentRandomizedQueue<Integer> first = new ConcurrentRandomizedQueue<>(4, 42);
+        ConcurrentRandomizedQueue<Integer> second = new ConcurrentRandomizedQueue<>(4, 42);
+        for (int i = 0; i < 1000; i++) {
+            first.enqueue(i);
+            second.enqueue(i);
+        }
+        boolean same = true;
+        while (!first.isEmpty()) {
+            if (!first.dequeue().equals(second.dequeue())) same = false;
+        }
+        StdOut.printf("Same dequeue() order=%b, expecting true\n", same);
+
+        StdOut.println("\nTesting dequeue() underflow prevention");
+        ConcurrentRandomizedQueue<Integer> empty = new ConcurrentRandomizedQueue<>();
+        try {
+            empty.dequeue();
+        } catch (NoSuchElementException e) {
+            StdOut.println("NoSuchElementException thrown as expected");
+        }
+
+        StdOut.printf("\nStress test: %d items, %d producers and %d consumers\n", count, threads, threads);
+        ConcurrentRandomizedQueue<Integer> queue = new ConcurrentRandomizedQueue<>();
+        AtomicIntegerArray removed = new AtomicIntegerArray(count);
+        Thread[] workers = new Thread[2 * threads];
+        for (int t = 0; t < threads; t++) {
+            int lo = t * count / threads;
+            int hi = (t + 1) * count / threads;
+            workers[t] = new Thread(() -> {
+                for (int i = lo; i < hi; i++)
+                    queue.enqueue(i);
+            });
+            // each consumer dequeues as many items as a producer enqueues, waiting while the queue is empty
+            workers[threads + t] = new Thread(() -> {
+                for (int i = lo; i < hi; ) {
+                    try {
+                        removed.incrementAndGet(queue.dequeue());
+                        i++;
+                    } catch (NoSuchElementException e) {
+                        Thread.onSpinWait();
+                    }
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        for (int i = 0; i < count; i++) {
+            if (removed.get(i) != 1) {
+                String msg = String.format("Item %d removed %d times", i, removed.get(i));
+                throw new AssertionError(msg);
+            }
+        }
+        StdOut.printf("Every item removed exactly once, queue size is %d, in %d ms\n",
+                      queue.size(), elapsed / 1_000_000);
+    }
+
+}
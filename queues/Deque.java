@@ -1,7 +1,14 @@
 import edu.princeton.cs.algs4.StdOut;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.StreamSupport;
 
 /**
  * A generic Deque (double-ended queue) implemented with double-sided linked list
@@ -21,6 +28,7 @@ public class Deque<Item> implements Iterable<Item> {
     private int n; // size of the deque
     private Node first; // the first node
     private Node last; // the last node
+    private int modCount; // the number of changes, so that iterators can fail fast
 
     /**
      * Construct an empty deque
@@ -67,6 +75,7 @@ public class Deque<Item> implements Iterable<Item> {
 
         // increment item counter
         this.n++;
+        this.modCount++;
 
 
 
@@ -104,6 +113,7 @@ public class Deque<Item> implements Iterable<Item> {
 
         // increment item counter
         this.n++;
+        this.modCount++;
 
         // if there is only one item,
         // the first and the last node are the same node
@@ -132,6 +142,7 @@ public class Deque<Item> implements Iterable<Item> {
         Item item = this.first.item;
         this.first = this.first.next;
         this.n--;
+        this.modCount++;
 
         // if the deque is empty,
         // set both first and last as null
@@ -157,6 +168,7 @@ public class Deque<Item> implements Iterable<Item> {
         Item item = this.last.item;
         this.last = this.last.prev;
         this.n--;
+        this.modCount++;
 
         // if the deque is empty,
         // set both first and last as null
@@ -170,7 +182,161 @@ public class Deque<Item> implements Iterable<Item> {
     }
 
     /**
-     * Return an iterator over items in order from front to back
+     * Add the items to the front, keeping their order, so that items[0] becomes the first item
+     * @param items the items to be added
+     * @throws IllegalArgumentException if items or any item is null, in which case nothing is added
+     */
+    public void addAllFirst(Item[] items) {
+        if (items == null) throw new IllegalArgumentException("Items should not be null");
+        this.splice(Arrays.asList(items).iterator(), true);
+    }
+
+    /**
+     * Add the items to the front, keeping their iteration order
+     * @param items the items to be added
+     * @throws IllegalArgumentException if items or any item is null, in which case nothing is added
+     */
+    public void addAllFirst(Collection<? extends Item> items) {
+        if (items == null) throw new IllegalArgumentException("Items should not be null");
+        this.splice(items.iterator(), true);
+    }
+
+    /**
+     * Add the items to the back, keeping their order, so that the last of items becomes the last item
+     * @param items the items to be added
+     * @throws IllegalArgumentException if items or any item is null, in which case nothing is added
+     */
+    public void addAllLast(Item[] items) {
+        if (items == null) throw new IllegalArgumentException("Items should not be null");
+        this.splice(Arrays.asList(items).iterator(), false);
+    }
+
+    /**
+     * Add the items to the back, keeping their iteration order
+     * @param items the items to be added
+     * @throws IllegalArgumentException if items or any item is null, in which case nothing is added
+     */
+    public void addAllLast(Collection<? extends Item> items) {
+        if (items == null) throw new IllegalArgumentException("Items should not be null");
+        this.splice(items.iterator(), false);
+    }
+
+    /**
+     * Link the items into a chain of nodes, then splice the whole chain at one end
+     * @param items the items to be added
+     * @param front true to splice at the front, false at the back
+     * @throws IllegalArgumentException if any item is null, in which case nothing is added
+     */
+    private void splice(Iterator<? extends Item> items, boolean front) {
+        // builds the chain apart, so that a null item leaves the deque untouched
+        Node chainFirst = null;
+        Node chainLast = null;
+        int count = 0;
+        while (items.hasNext()) {
+            Item item = items.next();
+            if (item == null) throw new IllegalArgumentException("Item should not be null");
+
+            Node node = new Node();
+            node.item = item;
+            node.prev = chainLast;
+            if (chainLast == null) chainFirst = node;
+            else chainLast.next = node;
+            chainLast = node;
+            count++;
+        }
+        if (count == 0) return;
+
+        if (this.isEmpty()) {
+            this.first = chainFirst;
+            this.last = chainLast;
+        } else if (front) {
+            chainLast.next = this.first;
+            this.first.prev = chainLast;
+            this.first = chainFirst;
+        } else {
+            chainFirst.prev = this.last;
+            this.last.next = chainFirst;
+            this.last = chainLast;
+        }
+        this.n += count;
+        this.modCount++;
+    }
+
+    /**
+     * Remove items from the front into an array, in order, until either is exhausted
+     * @param array the array to fill from index 0
+     * @return the number of items removed
+     * @throws IllegalArgumentException if array is null
+     */
+    public int drainTo(Item[] array) {
+        if (array == null) throw new IllegalArgumentException("Array should not be null");
+
+        int count = Math.min(this.n, array.length);
+        Node current = this.first;
+        for (int i = 0; i < count; i++) {
+            array[i] = current.item;
+            current = current.next;
+        }
+
+        // cuts the drained nodes off in one step
+        this.first = current;
+        this.n -= count;
+        if (count > 0) this.modCount++;
+        if (this.isEmpty()) {
+            this.last = null;
+        } else {
+            this.first.prev = null;
+        }
+        return count;
+    }
+
+    /**
+     * Remove the first k items at once, moving their nodes to a new deque without copying them
+     * @param k the number of items to remove
+     * @return a deque of the removed items, in the same order
+     * @throws IllegalArgumentException if k is negative
+     * @throws NoSuchElementException if the deque has fewer than k items
+     */
+    public Deque<Item> removeFirst(int k) {
+        if (k < 0) {
+            String msg = String.format("k should be >= 0, but %d found", k);
+            throw new IllegalArgumentException(msg);
+        }
+        if (k > this.n) throw new NoSuchElementException("Deque underflow");
+
+        Deque<Item> removed = new Deque<>();
+        if (k == 0) return removed;
+
+        // finds the k-th node, walking from the nearer end
+        Node cut;
+        if (k <= this.n / 2) {
+            cut = this.first;
+            for (int i = 1; i < k; i++) cut = cut.next;
+        } else {
+            cut = this.last;
+            for (int i = this.n; i > k; i--) cut = cut.prev;
+        }
+
+        removed.first = this.first;
+        removed.last = cut;
+        removed.n = k;
+
+        this.first = cut.next;
+        this.n -= k;
+        this.modCount++;
+        cut.next = null;
+        if (this.isEmpty()) {
+            this.last = null;
+        } else {
+            this.first.prev = null;
+        }
+        return removed;
+    }
+
+    /**
+     * Return an iterator over items in order from front to back.
+     * It walks the live list and fails fast with a ConcurrentModificationException
+     * if the deque changes other than through the iterator
      * @return an iterator over items in order from front to back
      */
     public Iterator<Item> iterator() {
@@ -180,12 +346,14 @@ public class Deque<Item> implements Iterable<Item> {
     private class DequeueIterator implements Iterator<Item> {
 
         private Node current = first; // the node in current iteration
+        private final int expectedModCount = modCount; // the changes the deque had when the iteration began
 
         public boolean hasNext() {
             return current != null;
         }
 
         public Item next() {
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
             if (!this.hasNext()) throw new NoSuchElementException("No next item");
 
             Item item = current.item;
@@ -199,6 +367,123 @@ public class Deque<Item> implements Iterable<Item> {
 
     }
 
+    /**
+     * Return an iterator over a copy of the items in order from front to back.
+     * The items are copied in one go into an array, so the iteration is unaffected by later changes
+     * and long scans run over contiguous memory
+     * @return an iterator over the items at the time of the call
+     */
+    public Iterator<Item> snapshotIterator() {
+        Object[] snapshot = new Object[this.n];
+        Node node = this.first;
+        for (int i = 0; i < this.n; i++) {
+            snapshot[i] = node.item;
+            node = node.next;
+        }
+        return new SnapshotIterator(snapshot);
+    }
+
+    private class SnapshotIterator implements Iterator<Item> {
+
+        private final Object[] snapshot; // the items at the time of the copy
+        private int index = 0; // the index of the next item
+
+        SnapshotIterator(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        public boolean hasNext() {
+            return this.index < this.snapshot.length;
+        }
+
+        public Item next() {
+            if (!this.hasNext()) throw new NoSuchElementException("No next item");
+
+            return (Item) this.snapshot[this.index++];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove() is not supported");
+        }
+
+    }
+
+    /**
+     * Return a spliterator over items in order from front to back, splitting off batches of
+     * growing size into arrays, so that parallel streams over the deque share the work.
+     * Like iterator(), it fails fast with a ConcurrentModificationException if the deque changes
+     * @return a spliterator over items in order from front to back
+     */
+    @Override
+    public Spliterator<Item> spliterator() {
+        return new DequeSpliterator();
+    }
+
+    private class DequeSpliterator implements Spliterator<Item> {
+
+        private static final int BATCH_UNIT = 1 << 10; // the size of the first batch split off
+        private static final int MAX_BATCH = 1 << 25; // the largest batch split off
+
+        private Node current = first; // the next node to traverse
+        private int remaining = n; // the number of items left to traverse
+        private int batch = 0; // the size of the last batch split off
+        private final int expectedModCount = modCount; // the changes the deque had when created
+
+        public boolean tryAdvance(Consumer<? super Item> action) {
+            if (action == null) throw new NullPointerException();
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            if (this.remaining == 0) return false;
+
+            Item item = this.current.item;
+            this.current = this.current.next;
+            this.remaining--;
+            action.accept(item);
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super Item> action) {
+            if (action == null) throw new NullPointerException();
+
+            Node node = this.current;
+            int count = this.remaining;
+            this.current = null;
+            this.remaining = 0;
+            for (int i = 0; i < count; i++) {
+                if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+                action.accept(node.item);
+                node = node.next;
+            }
+        }
+
+        public Spliterator<Item> trySplit() {
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
+            if (this.remaining <= 1) return null;
+
+            // copies the next batch into an array, which splits evenly from then on
+            int size = Math.min(this.batch + BATCH_UNIT, MAX_BATCH);
+            size = Math.min(size, this.remaining);
+            Object[] array = new Object[size];
+            Node node = this.current;
+            for (int i = 0; i < size; i++) {
+                array[i] = node.item;
+                node = node.next;
+            }
+            this.current = node;
+            this.remaining -= size;
+            this.batch = size;
+            return Spliterators.spliterator(array, 0, size, this.characteristics());
+        }
+
+        public long estimateSize() {
+            return this.remaining;
+        }
+
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.NONNULL;
+        }
+
+    }
+
     // unit testing (required)
     public static void main(String[] args) {
         StdOut.println("Create a new Deque of String");
@@ -259,6 +544,46 @@ public class Deque<Item> implements Iterable<Item> {
             StdOut.println(s);
         }
         StdOut.println("Expecting 'Hello world'");
+
+        StdOut.println("\nAdding 'a b' to the front and 'c d' to the back in bulk");
+        dq.addAllFirst(new String[] {"a", "b"});
+        dq.addAllLast(Arrays.asList("c", "d"));
+        for (String s: dq) {
+            StdOut.print(s + " ");
+        }
+        StdOut.println("\nExpecting 'a b Hello world c d'");
+
+        StdOut.println("\nRemoving the first 3 items at once");
+        Deque<String> block = dq.removeFirst(3);
+        StdOut.printf("Sizes are %d and %d, expecting 3 and 3\n", block.size(), dq.size());
+        StdOut.printf("Last removed is '%s', expecting 'Hello'\n", block.removeLast());
+
+        StdOut.println("\nDraining into an array of 2");
+        String[] drained = new String[2];
+        int count = dq.drainTo(drained);
+        StdOut.printf("Drained %d: '%s %s', expecting 2: 'world c'\n", count, drained[0], drained[1]);
+        StdOut.printf("Deque size is %d, expecting 1\n", dq.size());
+
+        StdOut.println("\nSumming 1 to 1000000 with a parallel stream");
+        Deque<Integer> numbers = new Deque<>();
+        for (int i = 1; i <= 1_000_000; i++) {
+            numbers.addLast(i);
+        }
+        long sum = StreamSupport.stream(numbers.spliterator(), true).mapToLong(Integer::longValue).sum();
+        StdOut.printf("Sum is %d, expecting 500000500000\n", sum);
+
+        StdOut.println("\nAdding to the deque while iterating");
+        Iterator<String> failFast = dq.iterator();
+        Iterator<String> snapshot = dq.snapshotIterator();
+        failFast.next();
+        dq.addLast("again");
+        try {
+            failFast.next();
+        } catch (ConcurrentModificationException e) {
+            StdOut.println("ConcurrentModificationException thrown as expected");
+        }
+        StdOut.printf("Snapshot has '%s' then next=%b, expecting 'd' then false\n",
+                      snapshot.next(), snapshot.hasNext());
     }
 
 }
@@ -0,0 +1,211 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.LongConsumer;
+
+/**
+ * A Deque (double-ended queue) of long values, implemented with a circular resizing array like RingDeque.
+ * Values are stored unboxed, and forEach() and the primitive iterator never box them,
+ * so a loop over the deque allocates nothing
+ */
+public class LongDeque {
+
+    private long[] items; // a circular array of values, its length always a power of two
+    private int head; // the index of the first value in items
+    private int n; // size of the deque
+
+    /**
+     * Construct an empty deque
+     */
+    public LongDeque() {
+        this.items = new long[1];
+        this.head = 0;
+        this.n = 0;
+    }
+
+    /**
+     * Is the deque empty?
+     * @return true if empty, vice versa
+     */
+    public boolean isEmpty() {
+        return this.n == 0;
+    }
+
+    /**
+     * Return the number of values on the deque
+     * @return the number of values on the deque
+     */
+    public int size() {
+        return this.n;
+    }
+
+    /**
+     * Add the value to the front
+     * @param item a value to be added
+     */
+    public void addFirst(long item) {
+        // double the array if full
+        if (this.n == this.items.length) resizing(2*this.items.length);
+
+        // step the head back, wrapping around the start of the array
+        this.head = (this.head - 1) & (this.items.length - 1);
+        this.items[this.head] = item;
+        this.n++;
+    }
+
+    /**
+     * Add the value to the back
+     * @param item a value to be added
+     */
+    public void addLast(long item) {
+        // double the array if full
+        if (this.n == this.items.length) resizing(2*this.items.length);
+
+        this.items[(this.head + this.n) & (this.items.length - 1)] = item;
+        this.n++;
+    }
+
+    /**
+     * Remove and return the value from the front
+     * @return the first value
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public long removeFirst() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Deque underflow");
+
+        long item = this.items[this.head];
+        this.head = (this.head + 1) & (this.items.length - 1);
+        this.n--;
+
+        // half the array if n = 1/4 array length and the array is not empty
+        if (this.n > 0 && this.items.length / 4 == this.n) resizing(this.items.length / 2);
+
+        return item;
+    }
+
+    /**
+     * Remove and return the value from the back
+     * @return the last value
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public long removeLast() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Deque underflow");
+
+        long item = this.items[(this.head + this.n - 1) & (this.items.length - 1)];
+        this.n--;
+
+        // half the array if n = 1/4 array length and the array is not empty
+        if (this.n > 0 && this.items.length / 4 == this.n) resizing(this.items.length / 2);
+
+        return item;
+    }
+
+    /**
+     * Resize the value array to a given capacity, unwrapping the values to start at index 0
+     * @param capacity capacity of the array after resizing, a power of two
+     */
+    private void resizing(int capacity) {
+        long[] temp = new long[capacity];
+
+        // copy the run from head to the end of the array, then the wrapped run from the start
+        int firstRun = Math.min(this.n, this.items.length - this.head);
+        System.arraycopy(this.items, this.head, temp, 0, firstRun);
+        System.arraycopy(this.items, 0, temp, firstRun, this.n - firstRun);
+
+        this.items = temp;
+        this.head = 0;
+    }
+
+    /**
+     * Perform an action on every value in order from front to back
+     * @param action the action
+     */
+    public void forEach(LongConsumer action) {
+        long[] items = this.items;
+        int mask = items.length - 1;
+        for (int i = 0; i < this.n; i++) {
+            action.accept(items[(this.head + i) & mask]);
+        }
+    }
+
+    /**
+     * Return an iterator over values in order from front to back
+     * @return an iterator over values in order from front to back
+     */
+    public PrimitiveIterator.OfLong iterator() {
+        return new LongDequeIterator();
+    }
+
+    private class LongDequeIterator implements PrimitiveIterator.OfLong {
+
+        private int index = 0; // the position of the next value from the front
+
+        public boolean hasNext() {
+            return this.index < n;
+        }
+
+        public long nextLong() {
+            if (!this.hasNext()) throw new NoSuchElementException("No next item");
+
+            return items[(head + this.index++) & (items.length - 1)];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove() is not supported");
+        }
+
+    }
+
+    // unit testing, followed by a comparison with a Deque of Long
+    public static void main(String[] args) {
+        StdOut.println("Create a new LongDeque");
+        LongDeque dq = new LongDeque();
+        StdOut.printf("Deque is empty=%b, expecting true\n", dq.isEmpty());
+
+        StdOut.println("\nAdding 1 to 5 at the back and 0 at the front and iterating");
+        for (int i = 1; i <= 5; i++) dq.addLast(i);
+        dq.addFirst(0);
+        PrimitiveIterator.OfLong it = dq.iterator();
+        while (it.hasNext()) StdOut.print(it.nextLong() + " ");
+        StdOut.println("\nExpecting '0 1 2 3 4 5'");
+
+        StdOut.printf("First value is %d, expecting 0\n", dq.removeFirst());
+        StdOut.printf("Last value is %d, expecting 5\n", dq.removeLast());
+        long[] sum = new long[1];
+        dq.forEach(x -> sum[0] += x);
+        StdOut.printf("Sum by forEach() is %d, expecting 10\n", sum[0]);
+
+        StdOut.println("\nTesting removeLast() underflow prevention");
+        while (!dq.isEmpty()) dq.removeFirst();
+        try {
+            dq.removeLast();
+        } catch (NoSuchElementException e) {
+            StdOut.println("NoSuchElementException thrown as expected");
+        }
+
+        int count = args.length < 1 ? 10_000_000 : Integer.parseInt(args[0]);
+        StdOut.printf("\nAdding, summing and removing %d values\n", count);
+
+        long start = System.nanoTime();
+        Deque<Long> boxed = new Deque<>();
+        for (int i = 0; i < count; i++) boxed.addLast((long) i);
+        long total = 0;
+        for (long x : boxed) total += x;
+        while (!boxed.isEmpty()) total -= boxed.removeFirst();
+        StdOut.printf("Deque<Long>    %6d ms\n", (System.nanoTime() - start) / 1_000_000);
+        boxed = null;
+
+        start = System.nanoTime();
+        LongDeque longs = new LongDeque();
+        for (int i = 0; i < count; i++) longs.addLast(i);
+        long[] longTotal = new long[1];
+        longs.forEach(x -> longTotal[0] += x);
+        while (!longs.isEmpty()) longTotal[0] -= longs.removeFirst();
+        StdOut.printf("LongDeque      %6d ms\n", (System.nanoTime() - start) / 1_000_000);
+        StdOut.printf("(checksums %d and %d, expecting 0)\n", total, longTotal[0]);
+    }
+
+}
@@ -1,15 +1,56 @@
-import edu.princeton.cs.algs4.StdIn;
 import edu.princeton.cs.algs4.StdOut;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
 public class Permutation {
+
+    // The size of the buffer of standard input, in chars
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Read whitespace-separated tokens, as StdIn.readString() does, and enqueue each of them
+     * @param in the input
+     * @param rq the randomized queue receiving the tokens
+     * @throws IOException if reading fails
+     */
+    private static void readTokens(Reader in, RandomizedQueue<String> rq) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder token = new StringBuilder();
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            for (int i = 0; i < count; i++) {
+                if (Character.isWhitespace(buffer[i])) {
+                    if (token.length() > 0) {
+                        rq.enqueue(token.toString());
+                        token.setLength(0);
+                    }
+                } else {
+                    token.append(buffer[i]);
+                }
+            }
+        }
+        if (token.length() > 0) rq.enqueue(token.toString());
+    }
+
+    // prints k of the tokens on standard input, uniformly at random, holding only k of them at once:
+    // k [seed [splittable|xoshiro256**]], drawing from StdRandom unless a seed is given
     public static void main(String[] args) {
         int k = Integer.parseInt(args[0]);
+        RandomSource random = args.length < 2 ? RandomSource.stdRandom()
+                : RandomSource.named(args.length < 3 ? "splittable" : args[2], Long.parseLong(args[1]));
 
-        RandomizedQueue<String> rq = new RandomizedQueue<>();
+        RandomizedQueue<String> rq = RandomizedQueue.reservoir(k, random);
 
-        while (!StdIn.isEmpty()) {
-            String s = StdIn.readString();
-            rq.enqueue(s);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8),
+                                                    BUFFER_SIZE)) {
+            readTokens(in, rq);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
         for (int i = 0; i < k; i++) {
@@ -1,20 +1,143 @@
 import edu.princeton.cs.algs4.StdOut;
-import edu.princeton.cs.algs4.StdRandom;
 
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 public class RandomizedQueue<Item> implements Iterable<Item> {
 
     private Item[] arr; // a resizing array of items on Randomized Queue
     private int n; // size of the RQ (and the index of the next available entry in arr)
+    private int modCount; // the number of changes, so that iterators can fail fast
+    private final RandomSource random; // the source of the random choices
+
+    /* the resize policy */
+
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8; // the longest array VMs reliably allocate
+    private final int initialCapacity; // the capacity of a new RQ, and the least capacity it shrinks to
+    private final double growthFactor; // the factor the capacity grows by when full, and shrinks by
+    private final double shrinkThreshold; // the fraction of the capacity in use at or below which it shrinks
+
+    /* reservoir mode, holding a uniform random sample of at most limit of the items enqueued */
+
+    private final int limit; // the most items held, Integer.MAX_VALUE unless in reservoir mode
+    private long skip; // the number of items to discard before the next replacement
+    private double w; // the largest of limit uniform variates, as in Algorithm L
 
     /**
-     * Construct an empty randomized queue
+     * Construct an empty randomized queue drawing from StdRandom,
+     * doubling its capacity when full and halving it when a quarter full
      */
     public RandomizedQueue() {
-        this.arr = (Item[]) new Object[1];
+        this(RandomSource.stdRandom());
+    }
+
+    /**
+     * Construct an empty randomized queue drawing from a given source,
+     * doubling its capacity when full and halving it when a quarter full
+     * @param random the source of the random choices
+     * @throws IllegalArgumentException if random is null
+     */
+    public RandomizedQueue(RandomSource random) {
+        this(1, 2.0, 0.25, Integer.MAX_VALUE, random);
+    }
+
+    /**
+     * Construct an empty randomized queue with a resize policy.
+     * The capacity grows by growthFactor when full, and shrinks by growthFactor, down to initialCapacity,
+     * when no more than shrinkThreshold of it is in use. A shrinkThreshold below 1/growthFactor
+     * leaves a gap between the two, so that a queue hovering around either never resizes back and forth
+     * @param initialCapacity the capacity of the new queue, and the least capacity it shrinks to
+     * @param growthFactor the factor the capacity grows and shrinks by
+     * @param shrinkThreshold the fraction of the capacity in use at or below which it shrinks, 0 to never shrink
+     * @throws IllegalArgumentException if initialCapacity is negative, growthFactor is not above 1,
+     *                                  or shrinkThreshold is not in [0, 1/growthFactor)
+     */
+    public RandomizedQueue(int initialCapacity, double growthFactor, double shrinkThreshold) {
+        this(initialCapacity, growthFactor, shrinkThreshold, Integer.MAX_VALUE, RandomSource.stdRandom());
+    }
+
+    /**
+     * Construct an empty randomized queue with a resize policy, drawing from a given source
+     * @param initialCapacity the capacity of the new queue, and the least capacity it shrinks to
+     * @param growthFactor the factor the capacity grows and shrinks by
+     * @param shrinkThreshold the fraction of the capacity in use at or below which it shrinks, 0 to never shrink
+     * @param random the source of the random choices
+     * @throws IllegalArgumentException if initialCapacity is negative, growthFactor is not above 1,
+     *                                  shrinkThreshold is not in [0, 1/growthFactor), or random is null
+     */
+    public RandomizedQueue(int initialCapacity, double growthFactor, double shrinkThreshold, RandomSource random) {
+        this(initialCapacity, growthFactor, shrinkThreshold, Integer.MAX_VALUE, random);
+    }
+
+    /**
+     * Construct an empty randomized queue with a resize policy, holding at most limit items
+     * @param initialCapacity the capacity of the new queue, and the least capacity it shrinks to
+     * @param growthFactor the factor the capacity grows and shrinks by
+     * @param shrinkThreshold the fraction of the capacity in use at or below which it shrinks
+     * @param limit the most items held
+     * @param random the source of the random choices
+     */
+    private RandomizedQueue(int initialCapacity, double growthFactor, double shrinkThreshold, int limit,
+                            RandomSource random) {
+        // validates the source and the resize policy
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+        if (initialCapacity < 0) {
+            String msg = String.format("initialCapacity should be >= 0, but %d found", initialCapacity);
+            throw new IllegalArgumentException(msg);
+        }
+        if (!(growthFactor > 1.0) || Double.isInfinite(growthFactor)) {
+            String msg = String.format("growthFactor should be > 1 and finite, but %f found", growthFactor);
+            throw new IllegalArgumentException(msg);
+        }
+        if (!(shrinkThreshold >= 0.0 && shrinkThreshold * growthFactor < 1.0)) {
+            String msg = String.format("shrinkThreshold should be in [0, %f), but %f found",
+                                       1.0 / growthFactor, shrinkThreshold);
+            throw new IllegalArgumentException(msg);
+        }
+
+        // initialises the instance variables
+        this.initialCapacity = Math.min(initialCapacity, limit);
+        this.growthFactor = growthFactor;
+        this.shrinkThreshold = shrinkThreshold;
+        this.arr = (Item[]) new Object[this.initialCapacity];
         this.n = 0;
+        this.limit = limit;
+        this.random = random;
+    }
+
+    /**
+     * Construct an empty randomized queue in reservoir mode, holding a uniform random sample
+     * of k of the items enqueued, in O(k) memory however many are enqueued.
+     * Once k items are held, enqueue() replaces a random one with the new item or discards the new item,
+     * skipping ahead by random gaps as in Li's Algorithm L, so that most items cost no random numbers.
+     * The sample is uniform over all the items enqueued if nothing is dequeued in between
+     * @param k the size of the reservoir
+     * @param <Item> a generic type
+     * @return an empty randomized queue in reservoir mode
+     * @throws IllegalArgumentException if k is negative
+     */
+    public static <Item> RandomizedQueue<Item> reservoir(int k) {
+        return reservoir(k, RandomSource.stdRandom());
+    }
+
+    /**
+     * Construct an empty randomized queue in reservoir mode of size k, drawing from a given source
+     * @param k the size of the reservoir
+     * @param random the source of the random choices
+     * @param <Item> a generic type
+     * @return an empty randomized queue in reservoir mode
+     * @throws IllegalArgumentException if k is negative or random is null
+     */
+    public static <Item> RandomizedQueue<Item> reservoir(int k, RandomSource random) {
+        if (k < 0) {
+            String msg = String.format("k should be >= 0, but %d found", k);
+            throw new IllegalArgumentException(msg);
+        }
+        return new RandomizedQueue<>(1, 2.0, 0.25, k, random);
     }
 
     /**
@@ -42,23 +165,86 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         // validate input
         if (item == null) throw new IllegalArgumentException("Item should not be null");
 
-        // double the array if full
-        if (this.n == this.arr.length) resizing(2*this.arr.length);
+        // a full reservoir keeps the item only at the end of a random gap
+        if (this.n >= this.limit) {
+            this.sampleIntoReservoir(item);
+            return;
+        }
+
+        // grow the array if full, but never past the limit
+        if (this.n == this.arr.length) resizing(this.grownCapacity(this.n + 1));
         this.arr[this.n++] = item;
+        this.modCount++;
+
+        // draws the first gap once the reservoir fills up
+        if (this.n == this.limit) {
+            this.w = Math.exp(Math.log(uniformPositive()) / this.limit);
+            this.skip = this.nextSkip();
+        }
     }
 
     /**
-     * Resize the item array to a given capacity
-     * @param capacity capacity of the array after resizing
+     * Offer an item to a full reservoir, replacing a random item with it at the end of the current gap
+     * @param item an item of the generic type
      */
-    private void resizing(int capacity) {
-        Item[] temp = (Item[]) new Object[capacity];
+    private void sampleIntoReservoir(Item item) {
+        if (this.limit == 0 || this.skip-- > 0) return;
 
-        for (int i = 0; i < this.n; i++) {
-            temp[i] = this.arr[i];
-        }
+        this.arr[this.random.nextInt(this.n)] = item;
+        this.modCount++;
+        this.w *= Math.exp(Math.log(uniformPositive()) / this.limit);
+        this.skip = this.nextSkip();
+    }
+
+    /**
+     * Draw the number of items to discard before the next replacement, a geometric variate
+     * @return the number of items to skip
+     */
+    private long nextSkip() {
+        double gap = Math.floor(Math.log(uniformPositive()) / Math.log1p(-this.w));
+        return gap < Long.MAX_VALUE ? (long) gap : Long.MAX_VALUE;
+    }
+
+    /**
+     * Return a uniform random number in (0, 1], whose logarithm is finite
+     * @return a uniform random number in (0, 1]
+     */
+    private double uniformPositive() {
+        return 1.0 - this.random.nextDouble();
+    }
+
+    /**
+     * Make sure the randomized queue holds minCapacity items without resizing,
+     * so that a large queue of known size is copied once instead of at every growth
+     * @param minCapacity the number of items to hold
+     */
+    public void ensureCapacity(int minCapacity) {
+        if (minCapacity > this.arr.length) resizing(this.grownCapacity(minCapacity));
+    }
+
+    /**
+     * Shrink the capacity to the number of items, releasing the unused part of the array
+     */
+    public void trimToSize() {
+        if (this.n < this.arr.length) resizing(this.n);
+    }
+
+    /**
+     * Return the capacity after growing by the growth factor, at least minCapacity, at most the limit
+     * @param minCapacity the least capacity needed
+     * @return the capacity to grow to
+     */
+    private int grownCapacity(int minCapacity) {
+        long capacity = Math.max((long) Math.ceil(this.arr.length * this.growthFactor), minCapacity);
+        return (int) Math.min(capacity, Math.min(this.limit, MAX_ARRAY_SIZE));
+    }
 
-        this.arr = temp;
+    /**
+     * Resize the item array to a given capacity
+     * @param capacity capacity of the array after resizing, at least n
+     */
+    private void resizing(int capacity) {
+        this.arr = Arrays.copyOf(this.arr, capacity);
     }
 
     /**
@@ -71,7 +257,7 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         if (this.isEmpty()) throw new NoSuchElementException("Randomized queue underflow");
 
         // generate a random array index
-        int index = StdRandom.uniform(this.n);
+        int index = this.random.nextInt(this.n);
 
         // retrieve the item
         Item item = this.arr[index];
@@ -81,13 +267,65 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
 
         // decrement queue size and avoid loitering
         this.arr[--n] = null;
+        this.modCount++;
 
-        // half the array if n = 1/4 array length and the array is not empty
-        if (this.n > 0 && this.arr.length / 4 == this.n) resizing(this.arr.length / 2);
+        this.shrinkIfSparse();
 
         return item;
     }
 
+    /**
+     * Remove k random items at once, by a partial Fisher-Yates shuffle moving each pick out of [0, n),
+     * resizing the array at most once afterwards
+     * @param k the number of items to remove
+     * @param out the array receiving the items in out[0..k)
+     * @throws IllegalArgumentException if k is negative, or out is null or shorter than k
+     * @throws NoSuchElementException if the RQ has fewer than k items
+     */
+    public void dequeue(int k, Item[] out) {
+        // validate input
+        if (k < 0) {
+            String msg = String.format("k should be >= 0, but %d found", k);
+            throw new IllegalArgumentException(msg);
+        }
+        if (out == null || out.length < k) {
+            String msg = String.format("out should hold at least %d items", k);
+            throw new IllegalArgumentException(msg);
+        }
+        if (k > this.n) throw new NoSuchElementException("Randomized queue underflow");
+
+        // each pick swaps in the last remaining entry, as dequeue() does
+        Item[] arr = this.arr;
+        int last = this.n;
+        for (int i = 0; i < k; i++) {
+            int index = this.random.nextInt(last);
+            out[i] = arr[index];
+            arr[index] = arr[--last];
+            arr[last] = null;
+        }
+
+        this.n = last;
+        if (k > 0) this.modCount++;
+
+        this.shrinkIfSparse();
+    }
+
+    /**
+     * Shrink the array by the growth factor while no more than the threshold of it is in use,
+     * copying it only once. A zero threshold never shrinks, not even an empty RQ
+     */
+    private void shrinkIfSparse() {
+        if (this.shrinkThreshold == 0.0) return;
+
+        int capacity = this.arr.length;
+        while (this.n <= capacity * this.shrinkThreshold) {
+            int shrunk = Math.max(this.initialCapacity, (int) Math.ceil(capacity / this.growthFactor));
+            if (shrunk >= capacity) break;
+            capacity = shrunk;
+        }
+        if (capacity < this.arr.length) resizing(capacity);
+    }
+
     /**
      * Return a random item (but do not remove it)
      * @return a random item
@@ -97,45 +335,136 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         // check for underflow
         if (this.isEmpty()) throw new NoSuchElementException("Randomized queue underflow");
 
-        int index = StdRandom.uniform(this.n);
+        int index = this.random.nextInt(this.n);
         return this.arr[index];
     }
 
     /**
-     * Return an independent iterator over items in random order
+     * Return k distinct random items (but do not remove them), by a partial Fisher-Yates shuffle
+     * whose swaps are undone afterwards, so that the RQ and its iterators are left as they were
+     * @param k the number of items to sample
+     * @return a list of k distinct random items, in random order
+     * @throws IllegalArgumentException if k is negative
+     * @throws NoSuchElementException if the RQ has fewer than k items
+     */
+    public List<Item> sample(int k) {
+        // validate input
+        if (k < 0) {
+            String msg = String.format("k should be >= 0, but %d found", k);
+            throw new IllegalArgumentException(msg);
+        }
+        if (k > this.n) throw new NoSuchElementException("Randomized queue underflow");
+
+        // moves each pick to the end of the unpicked entries, remembering where it came from
+        Item[] arr = this.arr;
+        int[] swaps = new int[k];
+        List<Item> items = new ArrayList<>(k);
+        int last = this.n;
+        for (int i = 0; i < k; i++) {
+            int index = this.random.nextInt(last--);
+            swaps[i] = index;
+            Item item = arr[index];
+            arr[index] = arr[last];
+            arr[last] = item;
+            items.add(item);
+        }
+
+        // undoes the swaps in reverse order
+        for (int i = k - 1; i >= 0; i--) {
+            last++;
+            Item item = arr[swaps[i]];
+            arr[swaps[i]] = arr[last - 1];
+            arr[last - 1] = item;
+        }
+
+        return items;
+    }
+
+    /**
+     * Return an independent iterator over items in random order.
+     * The iterator copies nothing: it visits arr[pi(0)], arr[pi(1)], ... for a random permutation pi
+     * of [0, n), computed on demand, so it takes constant memory and time to create.
+     * It fails fast with a ConcurrentModificationException if the RQ changes
      * @return an independent iterator over items in random order
      */
     public Iterator<Item> iterator() {
         return new RandomizedQueueIterator();
     }
 
+    /**
+     * An iterator visiting the items through a keyed Feistel permutation.
+     * A Feistel network over 2*half bits is a bijection of [0, 4^half) whatever its round function;
+     * indices outside [0, n) are mapped again (cycle walking) until they fall inside,
+     * which restricts the bijection to a permutation of [0, n).
+     * Halves are at least 4 bits, as narrower ones mix poorly and bias the order of small queues;
+     * above 256 items 4^half < 4n, so fewer than 4 mappings are needed on average.
+     * With independent random keys the order is pseudo-random, each item being equally likely at each step
+     */
     private class RandomizedQueueIterator implements Iterator<Item> {
 
-        private final Item[] shuffledArr; // a shuffled copy of the RQ
-        private int index; // the index of the current item
+        private static final int ROUNDS = 6; // the number of Feistel rounds
+        private static final int MIN_HALF = 4; // the fewest bits of a half block
+
+        private final long[] keys = new long[ROUNDS]; // a random key for each round
+        private final int half; // the number of bits of each half of a block
+        private final int mask; // the mask of a half block
+        private final int size = n; // the number of items when the iteration began
+        private final int expectedModCount = modCount; // the changes the RQ had when the iteration began
+        private int index = 0; // the number of items visited
 
         public RandomizedQueueIterator() {
-            this.shuffledArr = (Item[]) new Object[n];
+            // the smallest even number of bits covering [0, n), at least 2*MIN_HALF
+            int bits = 32 - Integer.numberOfLeadingZeros(Math.max(1, this.size - 1));
+            this.half = Math.max(MIN_HALF, (bits + 1) / 2);
+            this.mask = (1 << this.half) - 1;
 
-            // copying the entries in the arr to the new arr
-            for (int i = 0; i < n; i++) {
-                this.shuffledArr[i] = arr[i];
+            for (int i = 0; i < ROUNDS; i++) {
+                this.keys[i] = random.nextLong();
             }
+        }
 
-            // shuffle the new arr
-            StdRandom.shuffle(this.shuffledArr);
+        /**
+         * Map an index of [0, n) to another by the keyed Feistel network, walking the cycle until inside
+         * @param x an index in range [0, n)
+         * @return the permuted index in range [0, n)
+         */
+        private int permute(int x) {
+            do {
+                int left = x >>> this.half;
+                int right = x & this.mask;
+                for (long key : this.keys) {
+                    int mixed = left ^ this.round(right, key);
+                    left = right;
+                    right = mixed;
+                }
+                x = (left << this.half) | right;
+            } while (x < 0 || x >= this.size); // a negative block is past 2^31, so also outside
+            return x;
+        }
 
-            this.index = n;
+        /**
+         * The round function, the 64-bit finaliser of MurmurHash3 on the half block and the round key
+         * @param right a half block
+         * @param key the round key
+         * @return a pseudo-random half block
+         */
+        private int round(int right, long key) {
+            long z = key ^ right;
+            z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+            z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+            z ^= z >>> 33;
+            return (int) z & this.mask;
         }
 
         public boolean hasNext() {
-            return this.index > 0;
+            return this.index < this.size;
         }
 
         public Item next() {
+            if (modCount != this.expectedModCount) throw new ConcurrentModificationException();
             if (!this.hasNext()) throw new NoSuchElementException("No next item");
 
-            return this.shuffledArr[--this.index];
+            return arr[this.permute(this.index++)];
         }
 
         public void remove() {
@@ -167,6 +496,31 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
         }
         StdOut.println("Expecting the most of the pairs consist of different integers");
 
+        StdOut.println("\nTesting the iteration order over 100000 iterators");
+        int[][] counts = new int[n][n];
+        for (int t = 0; t < 100_000; t++) {
+            int position = 0;
+            for (int a : queue)
+                counts[a][position++]++;
+        }
+        for (int a = 0; a < n; a++) {
+            for (int position = 0; position < n; position++)
+                StdOut.printf("%6d ", counts[a][position]);
+            StdOut.println();
+        }
+        StdOut.println("Expecting every item about 20000 times at every position");
+
+        StdOut.println("\nTesting fail-fast iteration");
+        Iterator<Integer> it = queue.iterator();
+        it.next();
+        queue.enqueue(n);
+        try {
+            it.next();
+        } catch (ConcurrentModificationException e) {
+            StdOut.println("ConcurrentModificationException thrown as expected");
+        }
+        queue.dequeue();
+
         StdOut.println("\nTesting dequeue()");
         int num1 = queue.dequeue();
         StdOut.printf("Dequeued item: %d\n", num1);
@@ -195,6 +549,61 @@ public class RandomizedQueue<Item> implements Iterable<Item> {
             StdOut.println("NoSuchElementException thrown as expected");
         }
 
+        StdOut.println("\nTesting a reservoir of 3 out of 0 to 9, 100000 times");
+        int[] picked = new int[10];
+        for (int t = 0; t < 100_000; t++) {
+            RandomizedQueue<Integer> reservoir = RandomizedQueue.reservoir(3);
+            for (int i = 0; i < 10; i++)
+                reservoir.enqueue(i);
+            for (int a : reservoir)
+                picked[a]++;
+        }
+        for (int count : picked)
+            StdOut.printf("%.3f ", count / 100_000.0);
+        StdOut.println("\nExpecting about 0.3 for every item");
+
+        StdOut.println("\nTesting a resize policy growing by 1.5 and shrinking at 1/2");
+        RandomizedQueue<Integer> policed = new RandomizedQueue<>(16, 1.5, 0.5);
+        policed.ensureCapacity(1000);
+        for (int i = 0; i < 1000; i++)
+            policed.enqueue(i);
+        long total = 0;
+        while (policed.size() > 10)
+            total += policed.dequeue();
+        policed.trimToSize();
+        for (int a : policed)
+            total += a;
+        StdOut.printf("Sum of all the items is %d, expecting 499500\n", total);
+        try {
+            new RandomizedQueue<Integer>(16, 2.0, 0.5);
+        } catch (IllegalArgumentException e) {
+            StdOut.println("IllegalArgumentException thrown as expected for a threshold without hysteresis");
+        }
+
+        StdOut.println("\nTesting a resize policy that never shrinks, draining 1000 items");
+        RandomizedQueue<Integer> unshrunk = new RandomizedQueue<>(4, 2.0, 0.0);
+        for (int i = 0; i < 1000; i++)
+            unshrunk.enqueue(i);
+        RandomizedQueue<?> array = unshrunk; // reads the array as Object[], which its erasure is
+        int capacity = array.arr.length;
+        while (unshrunk.size() > 1)
+            unshrunk.dequeue();
+        unshrunk.dequeue(1, new Integer[1]);
+        StdOut.printf("Capacity is %d after draining, expecting %d\n", array.arr.length, capacity);
+
+        StdOut.println("\nTesting sample(3) and dequeue(3) out of 0 to 9");
+        RandomizedQueue<Integer> batch = new RandomizedQueue<>();
+        for (int i = 0; i < 10; i++)
+            batch.enqueue(i);
+        Iterator<Integer> unaffected = batch.iterator();
+        StdOut.printf("Sampled %s, expecting 3 distinct items\n", batch.sample(3));
+        unaffected.next();
+        StdOut.println("The iterator is unaffected by sample(3) as expected");
+        Integer[] out = new Integer[3];
+        batch.dequeue(3, out);
+        StdOut.printf("Dequeued %s, queue size is %d, expecting 3 distinct items and 7\n",
+                      Arrays.toString(out), batch.size());
+
         StdOut.println("\nTesting enqueue() input validation");
         try {
             queue.enqueue(null);
@@ -0,0 +1,250 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A generic Deque (double-ended queue) implemented with a circular resizing array.
+ * It offers the same operations as Deque in amortised constant time, without a node per item,
+ * and iterates over contiguous memory
+ * @param <Item> a generic type
+ */
+public class RingDeque<Item> implements Iterable<Item> {
+
+    private Item[] items; // a circular array of items, its length always a power of two
+    private int head; // the index of the first item in items
+    private int n; // size of the deque
+
+    /**
+     * Construct an empty deque
+     */
+    public RingDeque() {
+        this.items = (Item[]) new Object[1];
+        this.head = 0;
+        this.n = 0;
+    }
+
+    /**
+     * Is the deque empty?
+     * @return true if empty, vice versa
+     */
+    public boolean isEmpty() {
+        return this.n == 0;
+    }
+
+    /**
+     * Return the number of items on the deque
+     * @return the number of items on the deque
+     */
+    public int size() {
+        return this.n;
+    }
+
+    /**
+     * Add the item to the front
+     * @param item an item to be added
+     * @throws IllegalArgumentException if item is null
+     */
+    public void addFirst(Item item) {
+        // validate input
+        if (item == null) throw new IllegalArgumentException("Item should not be null");
+
+        // double the array if full
+        if (this.n == this.items.length) resizing(2*this.items.length);
+
+        // step the head back, wrapping around the start of the array
+        this.head = (this.head - 1) & (this.items.length - 1);
+        this.items[this.head] = item;
+        this.n++;
+    }
+
+    /**
+     * Add the item to the back
+     * @param item an item to be added
+     * @throws IllegalArgumentException if item is null
+     */
+    public void addLast(Item item) {
+        // validate input
+        if (item == null) throw new IllegalArgumentException("Item should not be null");
+
+        // double the array if full
+        if (this.n == this.items.length) resizing(2*this.items.length);
+
+        this.items[(this.head + this.n) & (this.items.length - 1)] = item;
+        this.n++;
+    }
+
+    /**
+     * Remove and return the item from the front
+     * @return the first item
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public Item removeFirst() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Deque underflow");
+
+        // retrieve the item and avoid loitering
+        Item item = this.items[this.head];
+        this.items[this.head] = null;
+        this.head = (this.head + 1) & (this.items.length - 1);
+        this.n--;
+
+        // half the array if n = 1/4 array length and the array is not empty
+        if (this.n > 0 && this.items.length / 4 == this.n) resizing(this.items.length / 2);
+
+        return item;
+    }
+
+    /**
+     * Remove and return the item from the back
+     * @return the last item
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public Item removeLast() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Deque underflow");
+
+        // retrieve the item and avoid loitering
+        int last = (this.head + this.n - 1) & (this.items.length - 1);
+        Item item = this.items[last];
+        this.items[last] = null;
+        this.n--;
+
+        // half the array if n = 1/4 array length and the array is not empty
+        if (this.n > 0 && this.items.length / 4 == this.n) resizing(this.items.length / 2);
+
+        return item;
+    }
+
+    /**
+     * Resize the item array to a given capacity, unwrapping the items to start at index 0
+     * @param capacity capacity of the array after resizing, a power of two
+     */
+    private void resizing(int capacity) {
+        Item[] temp = (Item[]) new Object[capacity];
+
+        // copy the run from head to the end of the array, then the wrapped run from the start
+        int firstRun = Math.min(this.n, this.items.length - this.head);
+        System.arraycopy(this.items, this.head, temp, 0, firstRun);
+        System.arraycopy(this.items, 0, temp, firstRun, this.n - firstRun);
+
+        this.items = temp;
+        this.head = 0;
+    }
+
+    /**
+     * Return an iterator over items in order from front to back
+     * @return an iterator over items in order from front to back
+     */
+    public Iterator<Item> iterator() {
+        return new RingDequeIterator();
+    }
+
+    private class RingDequeIterator implements Iterator<Item> {
+
+        private int index = 0; // the position of the next item from the front
+
+        public boolean hasNext() {
+            return this.index < n;
+        }
+
+        public Item next() {
+            if (!this.hasNext()) throw new NoSuchElementException("No next item");
+
+            return items[(head + this.index++) & (items.length - 1)];
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException("Remove() is not supported");
+        }
+
+    }
+
+    /**
+     * Return the heap currently in use, after asking for a garbage collection
+     * @return the heap in use in bytes
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // unit testing, followed by a comparison with the linked Deque
+    public static void main(String[] args) {
+        StdOut.println("Create a new RingDeque of String");
+        RingDeque<String> dq = new RingDeque<>();
+
+        StdOut.printf("Deque is empty=%b, expecting true\n", dq.isEmpty());
+        StdOut.printf("Deque size is %d, expecting 0\n", dq.size());
+
+        StdOut.println("\nAdding 'Hello world' from the front then back and iterating");
+        dq.addFirst("Hello");
+        dq.addLast("world");
+        StdOut.printf("Deque size is %d, expecting 2\n", dq.size());
+        for (String s: dq) {
+            StdOut.println(s);
+        }
+        StdOut.println("Expecting 'Hello world'");
+
+        StdOut.println("\nWrapping around the array and removing from both ends");
+        for (int i = 0; i < 100; i++) {
+            dq.addFirst("first" + i);
+            dq.addLast("last" + i);
+        }
+        StdOut.printf("First item is '%s', expecting 'first99'\n", dq.removeFirst());
+        StdOut.printf("Last item is '%s', expecting 'last99'\n", dq.removeLast());
+        StdOut.printf("Deque size is %d, expecting 200\n", dq.size());
+
+        StdOut.println("\nTesting removeFirst() underflow prevention");
+        while (!dq.isEmpty()) dq.removeLast();
+        try {
+            dq.removeFirst();
+        } catch (NoSuchElementException e) {
+            StdOut.println("NoSuchElementException thrown as expected");
+        }
+
+        // the same item is added throughout, so that only the deques themselves are measured
+        int count = args.length < 1 ? 10_000_000 : Integer.parseInt(args[0]);
+        Integer item = 42;
+        StdOut.printf("\nComparing with the linked Deque on %d items\n", count);
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        Deque<Integer> linked = new Deque<>();
+        for (int i = 0; i < count; i++) linked.addLast(item);
+        long linkedAdd = System.nanoTime() - start;
+        long linkedBytes = usedHeap() - before;
+        start = System.nanoTime();
+        long sum = 0;
+        for (int x : linked) sum += x;
+        long linkedIterate = System.nanoTime() - start;
+        start = System.nanoTime();
+        while (!linked.isEmpty()) sum += linked.removeFirst();
+        long linkedRemove = System.nanoTime() - start;
+        linked = null;
+
+        before = usedHeap();
+        start = System.nanoTime();
+        RingDeque<Integer> ring = new RingDeque<>();
+        for (int i = 0; i < count; i++) ring.addLast(item);
+        long ringAdd = System.nanoTime() - start;
+        long ringBytes = usedHeap() - before;
+        start = System.nanoTime();
+        for (int x : ring) sum += x;
+        long ringIterate = System.nanoTime() - start;
+        start = System.nanoTime();
+        while (!ring.isEmpty()) sum += ring.removeFirst();
+        long ringRemove = System.nanoTime() - start;
+
+        StdOut.printf("%-10s %14s %10s %10s %10s\n", "", "bytes/item", "add ms", "iterate ms", "remove ms");
+        StdOut.printf("%-10s %14.1f %10d %10d %10d\n", "Deque", linkedBytes / (double) count,
+                      linkedAdd / 1_000_000, linkedIterate / 1_000_000, linkedRemove / 1_000_000);
+        StdOut.printf("%-10s %14.1f %10d %10d %10d\n", "RingDeque", ringBytes / (double) count,
+                      ringAdd / 1_000_000, ringIterate / 1_000_000, ringRemove / 1_000_000);
+        StdOut.printf("(checksum %d)\n", sum);
+    }
+
+}
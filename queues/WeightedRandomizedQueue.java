@@ -0,0 +1,328 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A randomized queue whose sample() and dequeue() pick each item with probability proportional to its weight.
+ * Items are packed in a resizing array like RandomizedQueue, and their weights in a Fenwick tree over the array,
+ * so that picking an item, removing it and changing a weight all take O(log n).
+ * enqueue() returns a handle, which follows the item as it moves in the array, for updating its weight later
+ * @param <Item> a generic type
+ */
+public class WeightedRandomizedQueue<Item> {
+
+    /**
+     * A handle to an item on the queue, valid until the item is removed
+     */
+    public static final class Handle {
+        private final Object queue; // the queue holding the item
+        private int slot; // the index of the item in the array, or -1 once removed
+
+        private Handle(Object queue, int slot) {
+            this.queue = queue;
+            this.slot = slot;
+        }
+    }
+
+    private Item[] arr; // a resizing array of items
+    private double[] weights; // the weight of the item in each slot
+    private Handle[] handles; // the handle of the item in each slot
+    private double[] tree; // a Fenwick tree of the weights, tree[i] summing the slots (i - (i & -i), i]
+    private int n; // size of the queue (and the index of the next available slot)
+    private final RandomSource random; // the source of the random choices
+
+    /**
+     * Construct an empty weighted randomized queue drawing from StdRandom
+     */
+    public WeightedRandomizedQueue() {
+        this(RandomSource.stdRandom());
+    }
+
+    /**
+     * Construct an empty weighted randomized queue drawing from a given source
+     * @param random the source of the random choices
+     * @throws IllegalArgumentException if random is null
+     */
+    public WeightedRandomizedQueue(RandomSource random) {
+        if (random == null) throw new IllegalArgumentException("Random should not be null");
+
+        this.random = random;
+        this.arr = (Item[]) new Object[1];
+        this.weights = new double[1];
+        this.handles = new Handle[1];
+        this.tree = new double[2];
+        this.n = 0;
+    }
+
+    /**
+     * Is the queue empty?
+     * @return true if empty, vice versa
+     */
+    public boolean isEmpty() {
+        return this.n == 0;
+    }
+
+    /**
+     * Return the number of items on the queue
+     * @return the number of items on the queue
+     */
+    public int size() {
+        return this.n;
+    }
+
+    /**
+     * Return the sum of the weights of the items on the queue
+     * @return the total weight
+     */
+    public double totalWeight() {
+        double sum = 0.0;
+        for (int i = this.arr.length; i > 0; i -= i & -i) {
+            sum += this.tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Add the item to the queue with a weight
+     * @param item an item of the generic type
+     * @param weight the weight of the item
+     * @return a handle to the item
+     * @throws IllegalArgumentException if item is null or weight is not positive and finite
+     */
+    public Handle enqueue(Item item, double weight) {
+        // validate input
+        if (item == null) throw new IllegalArgumentException("Item should not be null");
+        validateWeight(weight);
+
+        // double the array if full
+        if (this.n == this.arr.length) resizing(2*this.arr.length);
+
+        Handle handle = new Handle(this, this.n);
+        this.arr[this.n] = item;
+        this.handles[this.n] = handle;
+        this.add(this.n, weight);
+        this.n++;
+        return handle;
+    }
+
+    /**
+     * Return the weight of an item on the queue
+     * @param handle the handle of the item
+     * @return the weight of the item
+     * @throws IllegalArgumentException if the item is not on this queue
+     */
+    public double weight(Handle handle) {
+        validateHandle(handle);
+        return this.weights[handle.slot];
+    }
+
+    /**
+     * Change the weight of an item on the queue
+     * @param handle the handle of the item
+     * @param weight the new weight of the item
+     * @throws IllegalArgumentException if the item is not on this queue, or weight is not positive and finite
+     */
+    public void updateWeight(Handle handle, double weight) {
+        validateHandle(handle);
+        validateWeight(weight);
+
+        this.add(handle.slot, weight - this.weights[handle.slot]);
+    }
+
+    /**
+     * Remove and return a random item, picked with probability proportional to its weight
+     * @return a random item
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public Item dequeue() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Randomized queue underflow");
+
+        int index = this.pick();
+        Item item = this.arr[index];
+        this.handles[index].slot = -1;
+
+        // move the last item into the slot of the retrieved item, carrying its weight and handle
+        int last = this.n - 1;
+        this.add(index, -this.weights[index]);
+        if (index != last) {
+            double weight = this.weights[last];
+            this.add(last, -weight);
+            this.add(index, weight);
+            this.arr[index] = this.arr[last];
+            this.handles[index] = this.handles[last];
+            this.handles[index].slot = index;
+        }
+
+        // decrement queue size and avoid loitering
+        this.arr[last] = null;
+        this.handles[last] = null;
+        this.weights[last] = 0.0;
+        this.n--;
+
+        // half the array if n = 1/4 array length and the array is not empty
+        if (this.n > 0 && this.arr.length / 4 == this.n) resizing(this.arr.length / 2);
+
+        return item;
+    }
+
+    /**
+     * Return a random item (but do not remove it), picked with probability proportional to its weight
+     * @return a random item
+     * @throws NoSuchElementException if the queue is empty
+     */
+    public Item sample() {
+        // check for underflow
+        if (this.isEmpty()) throw new NoSuchElementException("Randomized queue underflow");
+
+        return this.arr[this.pick()];
+    }
+
+    /**
+     * Pick a random slot with probability proportional to its weight,
+     * descending the Fenwick tree to the first slot whose prefix sum exceeds a uniform target
+     * @return the index of the slot
+     */
+    private int pick() {
+        double target = this.random.nextDouble() * this.totalWeight();
+
+        int position = 0;
+        for (int step = Integer.highestOneBit(this.arr.length); step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= this.arr.length && this.tree[next] <= target) {
+                position = next;
+                target -= this.tree[next];
+            }
+        }
+
+        // rounding in the sums could only carry the descent past the last item
+        return Math.min(position, this.n - 1);
+    }
+
+    /**
+     * Add to the weight of a slot, updating the Fenwick tree
+     * @param slot the index of the slot
+     * @param delta the change of weight
+     */
+    private void add(int slot, double delta) {
+        this.weights[slot] += delta;
+        for (int i = slot + 1; i <= this.arr.length; i += i & -i) {
+            this.tree[i] += delta;
+        }
+    }
+
+    /**
+     * Resize the arrays to a given capacity, rebuilding the Fenwick tree in linear time,
+     * which also clears the rounding errors accumulated by updates
+     * @param capacity capacity of the arrays after resizing
+     */
+    private void resizing(int capacity) {
+        Item[] temp = (Item[]) new Object[capacity];
+        double[] tempWeights = new double[capacity];
+        Handle[] tempHandles = new Handle[capacity];
+        System.arraycopy(this.arr, 0, temp, 0, this.n);
+        System.arraycopy(this.weights, 0, tempWeights, 0, this.n);
+        System.arraycopy(this.handles, 0, tempHandles, 0, this.n);
+
+        // each node passes its sum up to its parent once
+        double[] tempTree = new double[capacity + 1];
+        for (int i = 1; i <= capacity; i++) {
+            tempTree[i] += tempWeights[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= capacity) tempTree[parent] += tempTree[i];
+        }
+
+        this.arr = temp;
+        this.weights = tempWeights;
+        this.handles = tempHandles;
+        this.tree = tempTree;
+    }
+
+    /**
+     * Validates if a handle refers to an item on this queue,
+     * throw an <code>IllegalArgumentException</code> if not
+     * @param handle a handle
+     * @throws IllegalArgumentException if the handle is null, from another queue or of a removed item
+     */
+    private void validateHandle(Handle handle) {
+        if (handle == null || handle.queue != this || handle.slot < 0) {
+            throw new IllegalArgumentException("Handle should refer to an item on this queue");
+        }
+    }
+
+    /**
+     * Validates if a weight is positive and finite,
+     * throw an <code>IllegalArgumentException</code> if not
+     * @param weight a weight
+     * @throws IllegalArgumentException if the weight is not positive and finite
+     */
+    private static void validateWeight(double weight) {
+        if (!(weight > 0.0) || Double.isInfinite(weight)) {
+            String msg = String.format("Weight should be positive and finite, but %f found", weight);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+
+    // unit testing
+    public static void main(String[] args) {
+        int trials = 100_000;
+        WeightedRandomizedQueue<String> queue = new WeightedRandomizedQueue<>();
+
+        StdOut.printf("Queue is empty=%b, expecting true\n", queue.isEmpty());
+
+        StdOut.println("\nEnqueuing a b c d with weights 1 2 3 4");
+        String[] items = {"a", "b", "c", "d"};
+        Handle[] handles = new Handle[items.length];
+        for (int i = 0; i < items.length; i++) {
+            handles[i] = queue.enqueue(items[i], i + 1);
+        }
+        StdOut.printf("Queue size is %d, expecting 4\n", queue.size());
+        StdOut.printf("Total weight is %.1f, expecting 10.0\n", queue.totalWeight());
+
+        StdOut.printf("\nTesting sample() %d times\n", trials);
+        printFrequencies(queue, items, trials);
+        StdOut.println("Expecting about 0.1 0.2 0.3 0.4");
+
+        StdOut.println("\nUpdating the weight of 'a' to 6");
+        queue.updateWeight(handles[0], 6);
+        printFrequencies(queue, items, trials);
+        StdOut.println("Expecting about 0.4 0.133 0.2 0.267");
+
+        StdOut.println("\nTesting dequeue()");
+        String removed = queue.dequeue();
+        StdOut.printf("Dequeued item: %s, queue size is %d, expecting 3\n", removed, queue.size());
+        try {
+            queue.updateWeight(handles[removed.charAt(0) - 'a'], 1);
+        } catch (IllegalArgumentException e) {
+            StdOut.println("IllegalArgumentException thrown as expected for its handle");
+        }
+
+        StdOut.println("\nTesting dequeue() underflow prevention");
+        while (!queue.isEmpty()) queue.dequeue();
+        try {
+            queue.dequeue();
+        } catch (NoSuchElementException e) {
+            StdOut.println("NoSuchElementException thrown as expected");
+        }
+
+        StdOut.println("\nTesting enqueue() input validation");
+        try {
+            queue.enqueue("e", 0);
+        } catch (IllegalArgumentException e) {
+            StdOut.println("IllegalArgumentException thrown as expected");
+        }
+    }
+
+    // prints how often each item is sampled
+    private static void printFrequencies(WeightedRandomizedQueue<String> queue, String[] items, int trials) {
+        int[] counts = new int[items.length];
+        for (int t = 0; t < trials; t++) {
+            counts[queue.sample().charAt(0) - 'a']++;
+        }
+        for (int count : counts) {
+            StdOut.printf("%.3f ", count / (double) trials);
+        }
+        StdOut.println();
+    }
+
+}
@@ -0,0 +1,234 @@
+import edu.princeton.cs.algs4.StdOut;
+
+import java.util.NoSuchElementException;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A lock-free work-stealing Deque after Chase and Lev, for the task buffers of a work-stealing scheduler.
+ * A single owner thread adds and removes items at the back, like a stack, while any number of thief threads
+ * remove items from the front, so the owner only contends with thieves over the last item.
+ * Items live in a circular array between the indices top and bottom, which only ever grow;
+ * the owner alone moves bottom, thieves claim the item at top by a compare-and-set of top,
+ * and the array doubles when full, thieves finishing on the old array meanwhile.
+ * Every operation is linearizable; size() and isEmpty() are only snapshots while thieves are active
+ * @param <Item> a generic type
+ */
+public class WorkStealingDeque<Item> {
+
+    // The capacity of a new deque, a power of two
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The index of the front item, only ever incremented, by a compare-and-set
+    private final AtomicLong top = new AtomicLong();
+
+    // The index after the back item, only written by the owner
+    private volatile long bottom = 0;
+
+    // The circular array of items, its length always a power of two, only replaced by the owner
+    private volatile AtomicReferenceArray<Item> items = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * Is the deque empty?
+     * @return true if empty, vice versa
+     */
+    public boolean isEmpty() {
+        return this.size() == 0;
+    }
+
+    /**
+     * Return the number of items on the deque
+     * @return the number of items on the deque
+     */
+    public int size() {
+        long t = this.top.get();
+        return (int) Math.max(0, this.bottom - t);
+    }
+
+    /**
+     * Add the item to the back. Only called by the owner thread
+     * @param item an item to be added
+     * @throws IllegalArgumentException if item is null
+     */
+    public void addLast(Item item) {
+        // validate input
+        if (item == null) throw new IllegalArgumentException("Item should not be null");
+
+        long b = this.bottom;
+        long t = this.top.get();
+        AtomicReferenceArray<Item> a = this.items;
+
+        // double the array if full
+        if (b - t >= a.length()) a = this.grow(a, t, b);
+
+        a.set((int) b & (a.length() - 1), item);
+        // publishes the item to the thieves
+        this.bottom = b + 1;
+    }
+
+    /**
+     * Remove and return the item from the back. Only called by the owner thread
+     * @return the last item
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public Item removeLast() {
+        // reserves the back item before looking at top, so that a thief cannot take it unnoticed
+        long b = this.bottom - 1;
+        AtomicReferenceArray<Item> a = this.items;
+        this.bottom = b;
+        long t = this.top.get();
+
+        if (t > b) {
+            // empty, restores bottom
+            this.bottom = b + 1;
+            throw new NoSuchElementException("Deque underflow");
+        }
+
+        int index = (int) b & (a.length() - 1);
+        Item item = a.get(index);
+        if (t == b) {
+            // the last item, raced for with the thieves by claiming top
+            boolean won = this.top.compareAndSet(t, t + 1);
+            this.bottom = b + 1;
+            if (!won) throw new NoSuchElementException("Deque underflow");
+        }
+
+        // the slot is out of reach of the thieves, so it can be cleared to avoid loitering
+        a.set(index, null);
+        return item;
+    }
+
+    /**
+     * Remove and return the item from the front, retrying while other threads win the item first.
+     * Called by thief threads, or by the owner
+     * @return the first item
+     * @throws NoSuchElementException if the deque is empty
+     */
+    public Item removeFirst() {
+        while (true) {
+            long t = this.top.get();
+            long b = this.bottom;
+            if (t >= b) throw new NoSuchElementException("Deque underflow");
+
+            // the item must be read before claiming it, the owner may reuse its slot right after.
+            // The slot is not cleared, the owner overwrites it when the array wraps around
+            AtomicReferenceArray<Item> a = this.items;
+            Item item = a.get((int) t & (a.length() - 1));
+            if (this.top.compareAndSet(t, t + 1)) return item;
+        }
+    }
+
+    /**
+     * Copy the items in [t, b) to an array twice as long and publish it. Only called by the owner
+     * @param a the current array
+     * @param t the index of the front item
+     * @param b the index after the back item
+     * @return the new array
+     */
+    private AtomicReferenceArray<Item> grow(AtomicReferenceArray<Item> a, long t, long b) {
+        AtomicReferenceArray<Item> temp = new AtomicReferenceArray<>(2 * a.length());
+        for (long i = t; i < b; i++) {
+            temp.set((int) i & (temp.length() - 1), a.get((int) i & (a.length() - 1)));
+        }
+        this.items = temp;
+        return temp;
+    }
+
+    // stress test: every item the owner adds is removed exactly once, by the owner or by a thief
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length < 1 ? 2_000_000 : Integer.parseInt(args[0]);
+        int thieves = args.length < 2 ? Math.max(3, Runtime.getRuntime().availableProcessors() - 1)
+                                      : Integer.parseInt(args[1]);
+        long seed = args.length < 3 ? 0L : Long.parseLong(args[2]);
+
+        StdOut.println("Sequential test: the owner alone, across several growths");
+        WorkStealingDeque<Integer> dq = new WorkStealingDeque<>();
+        for (int i = 0; i < 100; i++) dq.addLast(i);
+        StdOut.printf("Size is %d, expecting 100\n", dq.size());
+        StdOut.printf("Last item is %d, expecting 99\n", dq.removeLast());
+        StdOut.printf("First item is %d, expecting 0\n", dq.removeFirst());
+        while (dq.size() > 1) dq.removeLast();
+        StdOut.printf("Last item is %d, expecting 1\n", dq.removeLast());
+        try {
+            dq.removeFirst();
+        } catch (NoSuchElementException e) {
+            StdOut.println("NoSuchElementException thrown as expected");
+        }
+
+        StdOut.printf("\nStress test: %d items, one owner and %d thieves\n", count, thieves);
+        WorkStealingDeque<Integer> deque = new WorkStealingDeque<>();
+        AtomicIntegerArray removed = new AtomicIntegerArray(count);
+        long[] stolen = new long[thieves];
+        boolean[] outOfOrder = new boolean[thieves];
+        Thread[] workers = new Thread[thieves];
+        AtomicBoolean finished = new AtomicBoolean(false); // set once the owner has added every item
+
+        for (int w = 0; w < thieves; w++) {
+            int worker = w;
+            workers[w] = new Thread(() -> {
+                // the owner adds in increasing order, so each thief must steal in increasing order
+                int previous = -1;
+                while (true) {
+                    int item;
+                    try {
+                        item = deque.removeFirst();
+                    } catch (NoSuchElementException e) {
+                        if (finished.get()) return;
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    if (item <= previous) outOfOrder[worker] = true;
+                    previous = item;
+                    removed.incrementAndGet(item);
+                    stolen[worker]++;
+                }
+            });
+        }
+
+        long start = System.nanoTime();
+        for (Thread worker : workers) worker.start();
+
+        // the owner adds every item and takes some back, as a scheduler running its own tasks
+        SplittableRandom random = new SplittableRandom(seed);
+        long kept = 0;
+        for (int i = 0; i < count; i++) {
+            deque.addLast(i);
+            if (random.nextInt(3) == 0) {
+                try {
+                    removed.incrementAndGet(deque.removeLast());
+                    kept++;
+                } catch (NoSuchElementException e) {
+                    // every item has been stolen meanwhile
+                }
+            }
+        }
+        finished.set(true);
+        while (true) {
+            try {
+                removed.incrementAndGet(deque.removeLast());
+                kept++;
+            } catch (NoSuchElementException e) {
+                break;
+            }
+        }
+        for (Thread worker : workers) worker.join();
+        long elapsed = System.nanoTime() - start;
+
+        for (int i = 0; i < count; i++) {
+            if (removed.get(i) != 1) {
+                String msg = String.format("Item %d removed %d times", i, removed.get(i));
+                throw new AssertionError(msg);
+            }
+        }
+        long steals = 0;
+        for (int w = 0; w < thieves; w++) {
+            if (outOfOrder[w]) throw new AssertionError("Thief " + w + " stole items out of order");
+            steals += stolen[w];
+        }
+        StdOut.printf("Every item removed exactly once: %d by the owner, %d stolen, in %d ms\n",
+                      kept, steals, elapsed / 1_000_000);
+    }
+}